@@ -0,0 +1,174 @@
+package io.github.totom3.commons.binary;
+
+import io.github.totom3.commons.chat.ChatClickAction;
+import io.github.totom3.commons.chat.ChatClickEvent;
+import io.github.totom3.commons.chat.ChatComponent;
+import io.github.totom3.commons.chat.ChatComponentAdapter;
+import io.github.totom3.commons.misc.DataBank;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.bukkit.ChatColor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Round-trip throughput of the composite adapters: {@link IDBinaryAdapter},
+ * {@link VersioningBinaryAdapter} over a {@link GeneratedAdapter},
+ * {@link ChatComponentAdapter} and {@link DataBankAdapter}. Each operation
+ * writes a value with a fresh context and reads it back.
+ * <p>
+ * Run with {@code ant bench}, which also reports allocations per operation
+ * through the GC profiler.
+ *
+ * @author Totom3
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AdapterBenchmark {
+
+    private final ByteBufferOutput output = new ByteBufferOutput();
+
+    private IDBinaryAdapter<Object> idAdapter;
+    private List<Object> mixed;
+
+    private VersioningBinaryAdapter<Warehouse> versioningAdapter;
+    private Warehouse warehouse;
+
+    private ChatComponentAdapter chatAdapter;
+    private ChatComponent chat;
+
+    private StringBankAdapter bankAdapter;
+    private DataBank<String> bank;
+
+    @Setup
+    public void setup() {
+	idAdapter = IDBinaryAdapter.builder()
+		.addAdapter(1, Integer.class, new ObjectAdapters.IntAdapter())
+		.addAdapter(2, String.class, new ObjectAdapters.StringAdapter())
+		.addAdapter(3, UUID.class, new ObjectAdapters.UUIDAdapter())
+		.build();
+	mixed = new ArrayList<>();
+	for (int i = 0; i < 32; ++i) {
+	    mixed.add(i);
+	    mixed.add("Element #" + i);
+	    mixed.add(new UUID(i, -i));
+	}
+
+	versioningAdapter = VersioningBinaryAdapter.<Warehouse>builder()
+		.addGeneratedAdapter(1, Warehouse.class)
+		.build(1);
+	warehouse = new Warehouse(UUID.randomUUID(), "Warehouse", 12, 1234.5, Arrays.asList("Alice", "Bob", "Carol"));
+
+	chatAdapter = new ChatComponentAdapter();
+	chat = new ChatComponent("Welcome to ").setColor(ChatColor.GOLD);
+	chat.getChilds().add(new ChatComponent("the server").setBold(true).setColor(ChatColor.AQUA)
+		.setClickEvent(new ChatClickEvent(ChatClickAction.RUN_COMMAND, "/spawn")));
+	chat.getChilds().add(new ChatComponent("!"));
+
+	bankAdapter = new StringBankAdapter();
+	bank = new DataBank<>();
+	for (int i = 0; i < 256; ++i) {
+	    bank.getOrInsert("minecraft:block_" + i);
+	}
+    }
+
+    private SerializationContext out() {
+	output.position(0);
+	return new BufferSerializationContext(output);
+    }
+
+    private DeserializationContext in() {
+	return new BufferDeserializationContext(output.toReadableBuffer());
+    }
+
+    @Benchmark
+    public List<Object> idAdapter() throws IOException {
+	SerializationContext context = out();
+	context.writeLength(mixed.size());
+	idAdapter.writeElements(mixed, context);
+
+	DeserializationContext in = in();
+	int count = in.readLength();
+	List<Object> read = new ArrayList<>(count);
+	idAdapter.readElements(read, count, in);
+	return read;
+    }
+
+    @Benchmark
+    public Warehouse versioningAdapter() throws IOException {
+	versioningAdapter.write(warehouse, out());
+	return versioningAdapter.read(in());
+    }
+
+    @Benchmark
+    public ChatComponent chatComponentAdapter() throws IOException {
+	chatAdapter.write(chat, out());
+	return chatAdapter.read(in());
+    }
+
+    @Benchmark
+    public DataBank<String> dataBankAdapter() throws IOException {
+	bankAdapter.write(bank, out());
+	return bankAdapter.read(in());
+    }
+
+    public static class Warehouse {
+
+	@BinaryField(0)
+	private UUID owner;
+	@BinaryField(1)
+	private String name;
+	@BinaryField(2)
+	private int level;
+	@BinaryField(3)
+	private double balance;
+	@BinaryField(4)
+	private List<String> members;
+
+	private Warehouse() {
+	}
+
+	Warehouse(UUID owner, String name, int level, double balance, List<String> members) {
+	    this.owner = owner;
+	    this.name = name;
+	    this.level = level;
+	    this.balance = balance;
+	    this.members = members;
+	}
+    }
+
+    private static class StringBankAdapter extends DataBankAdapter<String, DataBank<String>> {
+
+	@Override
+	protected DataBank<String> supply() {
+	    return new DataBank<>();
+	}
+
+	@Override
+	protected String readElement(DeserializationContext context) throws IOException {
+	    return context.readString();
+	}
+
+	@Override
+	protected void writeElement(String obj, SerializationContext context) throws IOException {
+	    context.writeString(obj);
+	}
+    }
+}
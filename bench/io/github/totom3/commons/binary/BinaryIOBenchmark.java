@@ -0,0 +1,207 @@
+package io.github.totom3.commons.binary;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Throughput of the generic {@link BinaryIO} paths: primitives, strings,
+ * heterogeneous maps, nested lists and enums. Every operation writes or reads
+ * a whole batch with a fresh context, as a file or packet would.
+ * <p>
+ * Run with {@code ant bench}, which also reports allocations per operation
+ * through the GC profiler.
+ *
+ * @author Totom3
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BinaryIOBenchmark {
+
+    private static final int BATCH = 64;
+
+    /**
+     * Whether variable-length integers and string references are enabled.
+     */
+    @Param({"false", "true"})
+    private boolean compact;
+
+    private final ByteBufferOutput output = new ByteBufferOutput();
+
+    private int[] ints;
+    private long[] longs;
+    private double[] doubles;
+    private List<String> strings;
+    private Map<String, Object> map;
+    private List<List<Integer>> lists;
+    private TimeUnit[] enums;
+
+    private ByteBuffer primitivesBytes;
+    private ByteBuffer stringsBytes;
+    private ByteBuffer mapBytes;
+    private ByteBuffer listsBytes;
+    private ByteBuffer enumsBytes;
+
+    @Setup
+    public void setup() throws IOException {
+	ints = new int[BATCH];
+	longs = new long[BATCH];
+	doubles = new double[BATCH];
+	strings = new ArrayList<>(BATCH);
+	lists = new ArrayList<>(BATCH / 8);
+	enums = new TimeUnit[BATCH];
+	for (int i = 0; i < BATCH; ++i) {
+	    ints[i] = i * i;
+	    longs[i] = (long) i << (i % 48);
+	    doubles[i] = i / 3.0;
+	    strings.add((i % 4 == 0) ? "Diamond Sword" : "Item #" + i);
+	    enums[i] = TimeUnit.values()[i % TimeUnit.values().length];
+	}
+	for (int i = 0; i < BATCH / 8; ++i) {
+	    List<Integer> inner = new ArrayList<>(8);
+	    for (int j = 0; j < 8; ++j) {
+		inner.add(i * 8 + j);
+	    }
+	    lists.add(inner);
+	}
+
+	map = new HashMap<>();
+	map.put("owner", UUID.randomUUID());
+	map.put("name", "Warehouse");
+	map.put("level", 12);
+	map.put("balance", 1234.5);
+	map.put("open", true);
+	map.put("members", Arrays.asList("Alice", "Bob", "Carol"));
+
+	primitivesBytes = bytes(writePrimitives());
+	stringsBytes = bytes(writeStrings());
+	mapBytes = bytes(writeMap());
+	listsBytes = bytes(writeNestedLists());
+	enumsBytes = bytes(writeEnums());
+    }
+
+    private SerializationContext out() {
+	output.position(0);
+	SerializationContext context = new BufferSerializationContext(output);
+	if (compact) {
+	    context.setEnabled(BinaryFeature.VARINTS, true);
+	    context.setEnabled(BinaryFeature.STRING_REFERENCES, true);
+	}
+	return context;
+    }
+
+    private DeserializationContext in(ByteBuffer bytes) {
+	DeserializationContext context = new BufferDeserializationContext(bytes.duplicate());
+	if (compact) {
+	    context.setEnabled(BinaryFeature.VARINTS, true);
+	    context.setEnabled(BinaryFeature.STRING_REFERENCES, true);
+	}
+	return context;
+    }
+
+    private static ByteBuffer bytes(ByteBufferOutput output) {
+	ByteBuffer readable = output.toReadableBuffer();
+	ByteBuffer copy = ByteBuffer.allocate(readable.remaining());
+	copy.put(readable).flip();
+	return copy;
+    }
+
+    @Benchmark
+    public ByteBufferOutput writePrimitives() throws IOException {
+	SerializationContext context = out();
+	for (int i = 0; i < BATCH; ++i) {
+	    context.writeInt(ints[i]);
+	    context.writeLong(longs[i]);
+	    context.writeDouble(doubles[i]);
+	}
+	return output;
+    }
+
+    @Benchmark
+    public void readPrimitives(Blackhole bh) throws IOException {
+	DeserializationContext context = in(primitivesBytes);
+	for (int i = 0; i < BATCH; ++i) {
+	    bh.consume(context.readInt());
+	    bh.consume(context.readLong());
+	    bh.consume(context.readDouble());
+	}
+    }
+
+    @Benchmark
+    public ByteBufferOutput writeStrings() throws IOException {
+	SerializationContext context = out();
+	for (String str : strings) {
+	    context.writeString(str);
+	}
+	return output;
+    }
+
+    @Benchmark
+    public void readStrings(Blackhole bh) throws IOException {
+	DeserializationContext context = in(stringsBytes);
+	for (int i = 0; i < BATCH; ++i) {
+	    bh.consume(context.readString());
+	}
+    }
+
+    @Benchmark
+    public ByteBufferOutput writeMap() throws IOException {
+	out().writeMap(map);
+	return output;
+    }
+
+    @Benchmark
+    public Map<String, Object> readMap() throws IOException {
+	return in(mapBytes).readMap(String.class, Object.class);
+    }
+
+    @Benchmark
+    public ByteBufferOutput writeNestedLists() throws IOException {
+	out().writeCollection(lists);
+	return output;
+    }
+
+    @Benchmark
+    public List<List> readNestedLists() throws IOException {
+	return in(listsBytes).readList(List.class);
+    }
+
+    @Benchmark
+    public ByteBufferOutput writeEnums() throws IOException {
+	SerializationContext context = out();
+	for (TimeUnit unit : enums) {
+	    context.writeEnum(unit);
+	}
+	return output;
+    }
+
+    @Benchmark
+    public void readEnums(Blackhole bh) throws IOException {
+	DeserializationContext context = in(enumsBytes);
+	for (int i = 0; i < BATCH; ++i) {
+	    bh.consume(context.readEnum(TimeUnit.class));
+	}
+    }
+}
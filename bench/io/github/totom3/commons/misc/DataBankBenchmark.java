@@ -0,0 +1,95 @@
+package io.github.totom3.commons.misc;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Palette lookups on a shared {@link ConcurrentDataBank}. Run the
+ * {@code lookup} benchmarks with increasing thread counts, for instance
+ * {@code ant bench -Dbench.args="DataBankBenchmark.lookup -t 4"}, to measure
+ * how reads scale across cores; the {@code mixed} group runs lookups while
+ * another thread keeps inserting new values. {@code getOrInsert} has every
+ * thread insert the same values into a bank emptied at each iteration, which
+ * measures the contention on the write lock.
+ *
+ * @author Totom3
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DataBankBenchmark {
+
+    private static final int VALUES = 4096;
+
+    private ConcurrentDataBank<String> bank;
+    private ConcurrentDataBank<String> insertBank;
+    private String[] values;
+
+    @Setup
+    public void setup() {
+	bank = new ConcurrentDataBank<>();
+	values = new String[VALUES];
+	for (int i = 0; i < VALUES; ++i) {
+	    values[i] = "minecraft:block_" + i;
+	    bank.getOrInsert(values[i]);
+	}
+    }
+
+    @Setup(Level.Iteration)
+    public void setupIteration() {
+	insertBank = new ConcurrentDataBank<>();
+    }
+
+    private String randomValue() {
+	return values[ThreadLocalRandom.current().nextInt(VALUES)];
+    }
+
+    @Benchmark
+    public short lookupByValue() {
+	return bank.getByValue(randomValue());
+    }
+
+    @Benchmark
+    public String lookupById() {
+	return bank.get((short) (1 + ThreadLocalRandom.current().nextInt(VALUES)));
+    }
+
+    @Benchmark
+    public short getOrInsert() {
+	return insertBank.getOrInsert(randomValue());
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(3)
+    public short mixedLookup() {
+	return bank.getOrInsert(randomValue());
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public short mixedInsert() {
+	// Churn through new values, keeping the bank from growing unbounded
+	String val = "minecraft:new_" + ThreadLocalRandom.current().nextInt(VALUES);
+	short id = bank.getOrInsert(val);
+	bank.removeKey(id);
+	return id;
+    }
+}
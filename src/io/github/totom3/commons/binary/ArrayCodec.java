@@ -0,0 +1,329 @@
+package io.github.totom3.commons.binary;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Bulk reads and writes of primitive arrays, without any length prefix. Arrays
+ * are copied straight into (or out of) the buffer of a
+ * {@link ByteBufferOutput} or {@link ByteBufferInput} through a typed view,
+ * which honors the buffer's byte order. Other outputs and inputs go through a
+ * reusable big-endian scratch buffer, a chunk at a time.
+ * <p>
+ * Instances are not thread-safe.
+ *
+ * @author Totom3
+ */
+final class ArrayCodec {
+
+    private static final int CHUNK_SIZE = 8192;
+
+    private ByteBuffer scratch;
+
+    private ByteBuffer scratch() {
+	if (scratch == null) {
+	    scratch = ByteBuffer.allocate(CHUNK_SIZE);
+	}
+	return scratch;
+    }
+
+    private static int byteLength(int length, int elementSize) {
+	long bytes = (long) length * elementSize;
+	if (bytes > Integer.MAX_VALUE) {
+	    throw new IllegalArgumentException("Array too large: " + length + " elements of " + elementSize + " bytes");
+	}
+	return (int) bytes;
+    }
+
+    void writeBooleans(DataOutput out, boolean[] arr) throws IOException {
+	if (out instanceof ByteBufferOutput) {
+	    ByteBufferOutput bufOut = (ByteBufferOutput) out;
+	    bufOut.ensureCapacity(arr.length);
+	    ByteBuffer buf = bufOut.buffer();
+	    for (boolean b : arr) {
+		buf.put((byte) ((b) ? 1 : 0));
+	    }
+	    return;
+	}
+
+	byte[] buf = scratch().array();
+	for (int off = 0; off < arr.length;) {
+	    int n = Math.min(arr.length - off, CHUNK_SIZE);
+	    for (int i = 0; i < n; ++i) {
+		buf[i] = (byte) ((arr[off + i]) ? 1 : 0);
+	    }
+	    out.write(buf, 0, n);
+	    off += n;
+	}
+    }
+
+    void readBooleans(DataInput in, boolean[] arr, int offset, int length) throws IOException {
+	byte[] buf = scratch().array();
+	for (int off = offset, end = offset + length; off < end;) {
+	    int n = Math.min(end - off, CHUNK_SIZE);
+	    in.readFully(buf, 0, n);
+	    for (int i = 0; i < n; ++i) {
+		byte b = buf[i];
+		if (b != 0 && b != 1) {
+		    throw new DeserializingException("Expected 1 or 0 for boolean; got instead " + b);
+		}
+		arr[off + i] = (b == 1);
+	    }
+	    off += n;
+	}
+    }
+
+    void writeShorts(DataOutput out, short[] arr) throws IOException {
+	int bytes = byteLength(arr.length, 2);
+	if (out instanceof ByteBufferOutput) {
+	    ByteBufferOutput bufOut = (ByteBufferOutput) out;
+	    bufOut.ensureCapacity(bytes);
+	    ByteBuffer buf = bufOut.buffer();
+	    buf.asShortBuffer().put(arr);
+	    buf.position(buf.position() + bytes);
+	    return;
+	}
+
+	ByteBuffer buf = scratch();
+	for (int off = 0; off < arr.length;) {
+	    int n = Math.min(arr.length - off, CHUNK_SIZE / 2);
+	    buf.clear();
+	    buf.asShortBuffer().put(arr, off, n);
+	    out.write(buf.array(), 0, n * 2);
+	    off += n;
+	}
+    }
+
+    void readShorts(DataInput in, short[] arr, int offset, int length) throws IOException {
+	int bytes = byteLength(length, 2);
+	if (in instanceof ByteBufferInput) {
+	    ByteBufferInput bufIn = (ByteBufferInput) in;
+	    bufIn.require(bytes);
+	    ByteBuffer buf = bufIn.buffer();
+	    buf.asShortBuffer().get(arr, offset, length);
+	    buf.position(buf.position() + bytes);
+	    return;
+	}
+
+	ByteBuffer buf = scratch();
+	for (int off = offset, end = offset + length; off < end;) {
+	    int n = Math.min(end - off, CHUNK_SIZE / 2);
+	    in.readFully(buf.array(), 0, n * 2);
+	    buf.clear();
+	    buf.asShortBuffer().get(arr, off, n);
+	    off += n;
+	}
+    }
+
+    void writeChars(DataOutput out, char[] arr) throws IOException {
+	int bytes = byteLength(arr.length, 2);
+	if (out instanceof ByteBufferOutput) {
+	    ByteBufferOutput bufOut = (ByteBufferOutput) out;
+	    bufOut.ensureCapacity(bytes);
+	    ByteBuffer buf = bufOut.buffer();
+	    buf.asCharBuffer().put(arr);
+	    buf.position(buf.position() + bytes);
+	    return;
+	}
+
+	ByteBuffer buf = scratch();
+	for (int off = 0; off < arr.length;) {
+	    int n = Math.min(arr.length - off, CHUNK_SIZE / 2);
+	    buf.clear();
+	    buf.asCharBuffer().put(arr, off, n);
+	    out.write(buf.array(), 0, n * 2);
+	    off += n;
+	}
+    }
+
+    void readChars(DataInput in, char[] arr, int offset, int length) throws IOException {
+	int bytes = byteLength(length, 2);
+	if (in instanceof ByteBufferInput) {
+	    ByteBufferInput bufIn = (ByteBufferInput) in;
+	    bufIn.require(bytes);
+	    ByteBuffer buf = bufIn.buffer();
+	    buf.asCharBuffer().get(arr, offset, length);
+	    buf.position(buf.position() + bytes);
+	    return;
+	}
+
+	ByteBuffer buf = scratch();
+	for (int off = offset, end = offset + length; off < end;) {
+	    int n = Math.min(end - off, CHUNK_SIZE / 2);
+	    in.readFully(buf.array(), 0, n * 2);
+	    buf.clear();
+	    buf.asCharBuffer().get(arr, off, n);
+	    off += n;
+	}
+    }
+
+    void writeInts(DataOutput out, int[] arr) throws IOException {
+	int bytes = byteLength(arr.length, 4);
+	if (out instanceof ByteBufferOutput) {
+	    ByteBufferOutput bufOut = (ByteBufferOutput) out;
+	    bufOut.ensureCapacity(bytes);
+	    ByteBuffer buf = bufOut.buffer();
+	    buf.asIntBuffer().put(arr);
+	    buf.position(buf.position() + bytes);
+	    return;
+	}
+
+	ByteBuffer buf = scratch();
+	for (int off = 0; off < arr.length;) {
+	    int n = Math.min(arr.length - off, CHUNK_SIZE / 4);
+	    buf.clear();
+	    buf.asIntBuffer().put(arr, off, n);
+	    out.write(buf.array(), 0, n * 4);
+	    off += n;
+	}
+    }
+
+    void readInts(DataInput in, int[] arr, int offset, int length) throws IOException {
+	int bytes = byteLength(length, 4);
+	if (in instanceof ByteBufferInput) {
+	    ByteBufferInput bufIn = (ByteBufferInput) in;
+	    bufIn.require(bytes);
+	    ByteBuffer buf = bufIn.buffer();
+	    buf.asIntBuffer().get(arr, offset, length);
+	    buf.position(buf.position() + bytes);
+	    return;
+	}
+
+	ByteBuffer buf = scratch();
+	for (int off = offset, end = offset + length; off < end;) {
+	    int n = Math.min(end - off, CHUNK_SIZE / 4);
+	    in.readFully(buf.array(), 0, n * 4);
+	    buf.clear();
+	    buf.asIntBuffer().get(arr, off, n);
+	    off += n;
+	}
+    }
+
+    void writeLongs(DataOutput out, long[] arr) throws IOException {
+	int bytes = byteLength(arr.length, 8);
+	if (out instanceof ByteBufferOutput) {
+	    ByteBufferOutput bufOut = (ByteBufferOutput) out;
+	    bufOut.ensureCapacity(bytes);
+	    ByteBuffer buf = bufOut.buffer();
+	    buf.asLongBuffer().put(arr);
+	    buf.position(buf.position() + bytes);
+	    return;
+	}
+
+	ByteBuffer buf = scratch();
+	for (int off = 0; off < arr.length;) {
+	    int n = Math.min(arr.length - off, CHUNK_SIZE / 8);
+	    buf.clear();
+	    buf.asLongBuffer().put(arr, off, n);
+	    out.write(buf.array(), 0, n * 8);
+	    off += n;
+	}
+    }
+
+    void readLongs(DataInput in, long[] arr, int offset, int length) throws IOException {
+	int bytes = byteLength(length, 8);
+	if (in instanceof ByteBufferInput) {
+	    ByteBufferInput bufIn = (ByteBufferInput) in;
+	    bufIn.require(bytes);
+	    ByteBuffer buf = bufIn.buffer();
+	    buf.asLongBuffer().get(arr, offset, length);
+	    buf.position(buf.position() + bytes);
+	    return;
+	}
+
+	ByteBuffer buf = scratch();
+	for (int off = offset, end = offset + length; off < end;) {
+	    int n = Math.min(end - off, CHUNK_SIZE / 8);
+	    in.readFully(buf.array(), 0, n * 8);
+	    buf.clear();
+	    buf.asLongBuffer().get(arr, off, n);
+	    off += n;
+	}
+    }
+
+    void writeFloats(DataOutput out, float[] arr) throws IOException {
+	int bytes = byteLength(arr.length, 4);
+	if (out instanceof ByteBufferOutput) {
+	    ByteBufferOutput bufOut = (ByteBufferOutput) out;
+	    bufOut.ensureCapacity(bytes);
+	    ByteBuffer buf = bufOut.buffer();
+	    buf.asFloatBuffer().put(arr);
+	    buf.position(buf.position() + bytes);
+	    return;
+	}
+
+	ByteBuffer buf = scratch();
+	for (int off = 0; off < arr.length;) {
+	    int n = Math.min(arr.length - off, CHUNK_SIZE / 4);
+	    buf.clear();
+	    buf.asFloatBuffer().put(arr, off, n);
+	    out.write(buf.array(), 0, n * 4);
+	    off += n;
+	}
+    }
+
+    void readFloats(DataInput in, float[] arr, int offset, int length) throws IOException {
+	int bytes = byteLength(length, 4);
+	if (in instanceof ByteBufferInput) {
+	    ByteBufferInput bufIn = (ByteBufferInput) in;
+	    bufIn.require(bytes);
+	    ByteBuffer buf = bufIn.buffer();
+	    buf.asFloatBuffer().get(arr, offset, length);
+	    buf.position(buf.position() + bytes);
+	    return;
+	}
+
+	ByteBuffer buf = scratch();
+	for (int off = offset, end = offset + length; off < end;) {
+	    int n = Math.min(end - off, CHUNK_SIZE / 4);
+	    in.readFully(buf.array(), 0, n * 4);
+	    buf.clear();
+	    buf.asFloatBuffer().get(arr, off, n);
+	    off += n;
+	}
+    }
+
+    void writeDoubles(DataOutput out, double[] arr) throws IOException {
+	int bytes = byteLength(arr.length, 8);
+	if (out instanceof ByteBufferOutput) {
+	    ByteBufferOutput bufOut = (ByteBufferOutput) out;
+	    bufOut.ensureCapacity(bytes);
+	    ByteBuffer buf = bufOut.buffer();
+	    buf.asDoubleBuffer().put(arr);
+	    buf.position(buf.position() + bytes);
+	    return;
+	}
+
+	ByteBuffer buf = scratch();
+	for (int off = 0; off < arr.length;) {
+	    int n = Math.min(arr.length - off, CHUNK_SIZE / 8);
+	    buf.clear();
+	    buf.asDoubleBuffer().put(arr, off, n);
+	    out.write(buf.array(), 0, n * 8);
+	    off += n;
+	}
+    }
+
+    void readDoubles(DataInput in, double[] arr, int offset, int length) throws IOException {
+	int bytes = byteLength(length, 8);
+	if (in instanceof ByteBufferInput) {
+	    ByteBufferInput bufIn = (ByteBufferInput) in;
+	    bufIn.require(bytes);
+	    ByteBuffer buf = bufIn.buffer();
+	    buf.asDoubleBuffer().get(arr, offset, length);
+	    buf.position(buf.position() + bytes);
+	    return;
+	}
+
+	ByteBuffer buf = scratch();
+	for (int off = offset, end = offset + length; off < end;) {
+	    int n = Math.min(end - off, CHUNK_SIZE / 8);
+	    in.readFully(buf.array(), 0, n * 8);
+	    buf.clear();
+	    buf.asDoubleBuffer().get(arr, off, n);
+	    off += n;
+	}
+    }
+}
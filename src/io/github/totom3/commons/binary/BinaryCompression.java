@@ -0,0 +1,217 @@
+package io.github.totom3.commons.binary;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Whole-stream compression schemes. Compressing a full file or inventory at
+ * once, rather than each of the objects it holds, lets repeated data across
+ * objects be shared by a single compression window, and only pays for one
+ * compressor.
+ * <p>
+ * Compressed buffers start with the uncompressed length, as a big-endian
+ * integer, so that they can be decompressed into an exactly-sized buffer. The
+ * length is only trusted as far as the compressed data can expand to it.
+ * Streams carry no such prefix.
+ *
+ * @author Totom3
+ */
+public enum BinaryCompression {
+
+    /**
+     * No compression: buffers and streams are returned as they are.
+     */
+    NONE {
+
+		    @Override
+		    public ByteBuffer compress(ByteBuffer src) {
+			return src.slice();
+		    }
+
+		    @Override
+		    public ByteBuffer decompress(ByteBuffer src) {
+			return src.slice();
+		    }
+
+		    @Override
+		    public OutputStream compress(OutputStream out) {
+			return out;
+		    }
+
+		    @Override
+		    public InputStream decompress(InputStream in) {
+			return in;
+		    }
+		},
+
+    /**
+     * zlib-wrapped DEFLATE, at the fastest compression level.
+     */
+    DEFLATE {
+
+		    @Override
+		    public ByteBuffer compress(ByteBuffer src) {
+			byte[] input = toArray(src);
+			int inputOff = (src.hasArray()) ? src.arrayOffset() + src.position() : 0;
+			int inputLen = src.remaining();
+
+			Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+			try {
+			    deflater.setInput(input, inputOff, inputLen);
+			    deflater.finish();
+
+			    byte[] output = new byte[4 + Math.max(64, inputLen >>> 1)];
+			    int len = 4;
+			    while (!deflater.finished()) {
+				if (len == output.length) {
+				    output = Arrays.copyOf(output, output.length << 1);
+				}
+				len += deflater.deflate(output, len, output.length - len);
+			    }
+
+			    ByteBuffer dst = ByteBuffer.wrap(output, 0, len);
+			    dst.putInt(0, inputLen);
+			    return dst;
+			} finally {
+			    deflater.end();
+			}
+		    }
+
+		    @Override
+		    public ByteBuffer decompress(ByteBuffer src) throws IOException {
+			if (src.remaining() < 4) {
+			    throw new DeserializingException("Compressed data is too short: " + src.remaining() + " bytes");
+			}
+			int length = src.duplicate().order(ByteOrder.BIG_ENDIAN).getInt(src.position());
+			int compressedLength = src.remaining() - 4;
+			if (length < 0 || length > (long) compressedLength * MAX_DEFLATE_RATIO + 64) {
+			    throw new DeserializingException("Read invalid uncompressed length: " + length + " for " + compressedLength + " compressed bytes");
+			}
+
+			ByteBuffer body = src.duplicate();
+			body.position(body.position() + 4);
+			byte[] input = toArray(body);
+			int inputOff = (body.hasArray()) ? body.arrayOffset() + body.position() : 0;
+
+			// Grown as data is inflated, so that the header alone cannot
+			// make us allocate more than what the data expands to.
+			byte[] output = new byte[(int) Math.min(length, Math.max(64L, (long) compressedLength << 2))];
+			Inflater inflater = new Inflater();
+			try {
+			    inflater.setInput(input, inputOff, body.remaining());
+			    int len = 0;
+			    while (len < length) {
+				if (len == output.length) {
+				    output = Arrays.copyOf(output, (int) Math.min((long) output.length << 1, length));
+				}
+				int n = inflater.inflate(output, len, output.length - len);
+				if (n == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+				    throw new DeserializingException("Compressed data ended after " + len + " of " + length + " bytes");
+				}
+				len += n;
+			    }
+			} catch (DataFormatException ex) {
+			    throw new DeserializingException("Corrupt compressed data", ex);
+			} finally {
+			    inflater.end();
+			}
+
+			return ByteBuffer.wrap(output);
+		    }
+
+		    @Override
+		    public OutputStream compress(OutputStream out) {
+			return new DeflaterOutputStream(out, new Deflater(Deflater.BEST_SPEED)) {
+
+			    @Override
+			    public void close() throws IOException {
+				try {
+				    super.close();
+				} finally {
+				    def.end();
+				}
+			    }
+			};
+		    }
+
+		    @Override
+		    public InputStream decompress(InputStream in) {
+			return new InflaterInputStream(in);
+		    }
+		};
+
+    /**
+     * The most DEFLATE can expand its input by; uncompressed lengths above
+     * it are corrupt.
+     */
+    private static final int MAX_DEFLATE_RATIO = 1032;
+
+    /**
+     * Compresses the remaining bytes of a buffer. The position of {@code src}
+     * is left untouched.
+     *
+     * @param src the data to compress.
+     *
+     * @return a new buffer holding the compressed data, ready to be read.
+     */
+    public abstract ByteBuffer compress(ByteBuffer src);
+
+    /**
+     * Decompresses the remaining bytes of a buffer holding data compressed by
+     * {@link #compress(ByteBuffer)}. The position of {@code src} is left
+     * untouched.
+     *
+     * @param src the compressed data.
+     *
+     * @return a big-endian buffer holding the decompressed data, ready to be
+     *         read.
+     *
+     * @throws IOException if the data is corrupt or truncated.
+     */
+    public abstract ByteBuffer decompress(ByteBuffer src) throws IOException;
+
+    /**
+     * Wraps a stream so that everything written to it is compressed. The
+     * returned stream must be closed for the compressed data to be complete.
+     *
+     * @param out the stream to write compressed data to.
+     *
+     * @return a stream compressing what is written to it.
+     */
+    public abstract OutputStream compress(OutputStream out);
+
+    /**
+     * Wraps a stream written by {@link #compress(OutputStream)} so that reading
+     * from it yields the decompressed data.
+     *
+     * @param in the stream to read compressed data from.
+     *
+     * @return a stream decompressing what is read from {@code in}.
+     */
+    public abstract InputStream decompress(InputStream in);
+
+    /**
+     * Returns the array backing a buffer, or a copy of its remaining bytes if
+     * it has no accessible array.
+     */
+    private static byte[] toArray(ByteBuffer src) {
+	checkNotNull(src, "Buffer cannot be null");
+	if (src.hasArray()) {
+	    return src.array();
+	}
+
+	byte[] bytes = new byte[src.remaining()];
+	src.duplicate().get(bytes);
+	return bytes;
+    }
+}
@@ -0,0 +1,85 @@
+package io.github.totom3.commons.binary;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Optional encoding features of a serialization context. A stream must be
+ * read with the same features it was written with; the features in use can be
+ * recorded at the beginning of a stream using
+ * {@link SerializationContext#writeHeader()}, and restored with
+ * {@link DeserializationContext#readHeader()}.
+ *
+ * @author Totom3
+ */
+public enum BinaryFeature {
+
+    /**
+     * Lengths, sizes, enum ordinals and {@code IDBinaryAdapter} tokens are
+     * written as variable-length integers (see {@link VarInts}) instead of
+     * fixed-width ones. Most of them take a single byte.
+     */
+    VARINTS(0x01),
+    /**
+     * Each distinct string written by {@code writeString} is written in full
+     * only once; subsequent occurrences are written as a reference to the
+     * first one, and read back as the very same {@code String} instance. At
+     * most {@value SerializationContext#MAX_STRING_REFERENCES} distinct
+     * strings are remembered; strings encountered after that are always
+     * written in full.
+     */
+    STRING_REFERENCES(0x02),
+    /**
+     * Every object written through {@code writeObject}, {@code writeCollection}
+     * or {@code writeMap} is preceded by a handle. An object already written
+     * to the stream (by identity) is then written as a reference to it, and
+     * read back as the very same instance. This shrinks graphs sharing objects,
+     * and makes cyclic graphs writable.
+     * <p>
+     * Reading back a cycle requires the adapter of at least one object of the
+     * cycle to call {@link DeserializationContext#bindReference(Object)} as
+     * soon as it has created its instance, before reading nested objects.
+     */
+    OBJECT_REFERENCES(0x04),
+    /**
+     * Everything following the header is compressed as a whole with
+     * {@link BinaryCompression#DEFLATE}. Contexts do not compress by
+     * themselves: this feature is honored by {@link BinaryFiles}, which
+     * compresses the data when committing a context and decompresses it when
+     * opening a file. Streams can be compressed explicitly with
+     * {@link BinaryCompression#compress(java.io.OutputStream)}.
+     */
+    DEFLATE(0x08);
+
+    private final int mask;
+
+    private BinaryFeature(int mask) {
+	this.mask = mask;
+    }
+
+    int mask() {
+	return mask;
+    }
+
+    static int toMask(Set<BinaryFeature> features) {
+	int mask = 0;
+	for (BinaryFeature feature : features) {
+	    mask |= feature.mask;
+	}
+	return mask;
+    }
+
+    static EnumSet<BinaryFeature> fromMask(int mask) {
+	EnumSet<BinaryFeature> set = EnumSet.noneOf(BinaryFeature.class);
+	for (BinaryFeature feature : values()) {
+	    if ((mask & feature.mask) != 0) {
+		set.add(feature);
+	    }
+	}
+	return set;
+    }
+
+    static int allMask() {
+	return toMask(EnumSet.allOf(BinaryFeature.class));
+    }
+}
@@ -0,0 +1,38 @@
+package io.github.totom3.commons.binary;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a field written by a {@link GeneratedAdapter}. Fields are written in
+ * increasing {@link #value() order}, and read back in the same order.
+ *
+ * @author Totom3
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+@Documented
+public @interface BinaryField {
+
+    /**
+     * The position of this field in the encoded object. Positions must be
+     * unique within a class and its superclasses, but need not be contiguous.
+     *
+     * @return the position of this field.
+     */
+    int value();
+
+    /**
+     * <b>Optional</b>. The first format version containing this field. Only
+     * used by adapters generated for a specific version (see
+     * {@link GeneratedAdapter#of(Class, int)}); fields added in a later
+     * version are neither written nor read, and keep the value given by the
+     * constructor.
+     *
+     * @return the version this field was added in.
+     */
+    int since() default 0;
+}
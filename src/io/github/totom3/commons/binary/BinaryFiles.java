@@ -0,0 +1,222 @@
+package io.github.totom3.commons.binary;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Reads and writes {@code BinaryIO}-encoded files through NIO channels. Files
+ * are read by memory-mapping them, and written to a temporary file which
+ * atomically replaces the target once fully written and flushed, so that a
+ * crash can never leave a half-written file behind.
+ * <p>
+ * Files written by this class start with a header recording the
+ * {@link BinaryFeature}s they were written with. The header is written in the
+ * byte order of the data, which is detected from its magic number when the
+ * file is read. Files without such a header are still read, big-endian and
+ * with no feature enabled.
+ *
+ * @author Totom3
+ */
+public final class BinaryFiles {
+
+    private BinaryFiles() {
+    }
+
+    /**
+     * Memory-maps a file and returns a context reading from it, positioned
+     * after the header, if any, and using the byte order the file was written
+     * with. The mapping stays valid after the underlying channel is closed. If
+     * the header enables {@link BinaryFeature#DEFLATE}, the file is
+     * decompressed into a heap buffer instead.
+     *
+     * @param file the file to read.
+     *
+     * @return a context reading the file, with the features recorded in its
+     *         header enabled.
+     *
+     * @throws IOException if the file cannot be opened or mapped.
+     */
+    public static BufferDeserializationContext open(Path file) throws IOException {
+	checkNotNull(file, "File cannot be null");
+
+	MappedByteBuffer buffer;
+	try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+	    buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+	}
+
+	// The magic number reads reversed if the file was written little-endian
+	if (buffer.remaining() >= 5 && buffer.getInt(0) == Integer.reverseBytes(SerializationContext.HEADER_MAGIC)) {
+	    buffer.order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	BufferDeserializationContext context = new BufferDeserializationContext(buffer);
+	context.readHeaderIfPresent();
+	if (!context.isEnabled(BinaryFeature.DEFLATE)) {
+	    return context;
+	}
+
+	ByteBuffer data = BinaryCompression.DEFLATE.decompress(context.buffer());
+	BufferDeserializationContext inflated = new BufferDeserializationContext(data.order(context.order()));
+	inflated.setFeatureMask(context.featureMask());
+	return inflated;
+    }
+
+    public static BufferDeserializationContext open(File file) throws IOException {
+	return open(file.toPath());
+    }
+
+    /**
+     * Reads an object of the specified type from a memory-mapped file.
+     *
+     * @param <T>   the type of the object.
+     * @param file  the file to read.
+     * @param clazz the class of the object.
+     *
+     * @return the object read.
+     *
+     * @throws IOException if an I/O error occurs, or if the object cannot be
+     *                     deserialized.
+     */
+    public static <T> T read(Path file, Class<T> clazz) throws IOException {
+	return open(file).readObject(clazz);
+    }
+
+    public static <T> T read(File file, Class<T> clazz) throws IOException {
+	return read(file.toPath(), clazz);
+    }
+
+    /**
+     * Serializes an object into a buffer, and then writes it to the specified
+     * file, as specified by {@link #commit(Path, BufferSerializationContext)}.
+     *
+     * @param file     the file to write.
+     * @param obj      the object to write.
+     * @param features the features to write the object with.
+     *
+     * @throws IOException if an I/O error occurs, or if the object cannot be
+     *                     serialized.
+     */
+    public static void write(Path file, Object obj, BinaryFeature... features) throws IOException {
+	BufferSerializationContext context = new BufferSerializationContext();
+	for (BinaryFeature feature : features) {
+	    context.setEnabled(feature, true);
+	}
+	context.writeObject(obj);
+	commit(file, context);
+    }
+
+    public static void write(File file, Object obj, BinaryFeature... features) throws IOException {
+	write(file.toPath(), obj, features);
+    }
+
+    /**
+     * Writes everything written so far into a context to the specified file,
+     * replacing it atomically. The data is preceded by a header recording the
+     * features enabled in the context at the time this method is called, and
+     * compressed if {@link BinaryFeature#DEFLATE} is one of them. The header is
+     * written in the byte order of the context, so that {@link #open(Path)}
+     * reads the data back in that order.
+     *
+     * @param file    the file to write.
+     * @param context the context holding the data.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    public static void commit(Path file, BufferSerializationContext context) throws IOException {
+	ByteBuffer header = ByteBuffer.allocate(5).order(context.order());
+	header.putInt(SerializationContext.HEADER_MAGIC);
+	header.put((byte) context.featureMask());
+	header.flip();
+
+	ByteBuffer data = context.toReadableBuffer();
+	if (context.isEnabled(BinaryFeature.DEFLATE)) {
+	    data = BinaryCompression.DEFLATE.compress(data);
+	}
+
+	writeBuffers(file, header, data);
+    }
+
+    /**
+     * Writes the remaining bytes of the provided buffers, in order, to a
+     * temporary file using a gathering write. The temporary file is then
+     * flushed to the storage device and atomically moved over the target file,
+     * and the directory is flushed where the platform allows it. The file gets
+     * the permissions of the file it replaces, or the default ones if there is
+     * none.
+     *
+     * @param file    the file to write.
+     * @param buffers the data to write.
+     *
+     * @throws IOException if an I/O error occurs. The target file is left
+     *                     untouched in that case.
+     */
+    public static void writeBuffers(Path file, ByteBuffer... buffers) throws IOException {
+	checkNotNull(file, "File cannot be null");
+	checkNotNull(buffers, "Buffers cannot be null");
+
+	Path absolute = file.toAbsolutePath();
+	Path dir = absolute.getParent();
+	Files.createDirectories(dir);
+
+	Path temp;
+	FileChannel tempChannel;
+	while (true) {
+	    // Not Files.createTempFile, which would only let the owner read it
+	    temp = dir.resolve(absolute.getFileName() + "." + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+	    try {
+		tempChannel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+		break;
+	    } catch (FileAlreadyExistsException ex) {
+		// Try another name
+	    }
+	}
+
+	try {
+	    try (FileChannel channel = tempChannel) {
+		long remaining = 0;
+		for (ByteBuffer buffer : buffers) {
+		    remaining += buffer.remaining();
+		}
+
+		while (remaining > 0) {
+		    remaining -= channel.write(buffers);
+		}
+		channel.force(true);
+	    }
+
+	    try {
+		Files.setPosixFilePermissions(temp, Files.getPosixFilePermissions(absolute));
+	    } catch (NoSuchFileException | UnsupportedOperationException ex) {
+		// New file, or no POSIX permissions
+	    }
+
+	    try {
+		Files.move(temp, absolute, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+	    } catch (AtomicMoveNotSupportedException ex) {
+		Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING);
+	    }
+	} finally {
+	    Files.deleteIfExists(temp);
+	}
+
+	// Makes the rename itself durable
+	try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+	    channel.force(true);
+	} catch (IOException ex) {
+	    // Directories cannot be opened on some platforms, such as Windows
+	}
+    }
+}
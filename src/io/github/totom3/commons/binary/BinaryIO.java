@@ -2,6 +2,8 @@ package io.github.totom3.commons.binary;
 
 import com.google.common.base.Preconditions;
 import static com.google.common.base.Preconditions.checkNotNull;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import io.github.totom3.commons.binary.ObjectAdapters.StringAdapter;
 import io.github.totom3.commons.bukkit.AbstractLocation;
 import io.github.totom3.commons.bukkit.AbstractRegion;
@@ -12,7 +14,6 @@ import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.EOFException;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -22,6 +23,8 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import org.bukkit.Color;
 import org.bukkit.Location;
 import org.bukkit.enchantments.Enchantment;
@@ -30,6 +33,10 @@ import org.bukkit.inventory.ItemStack;
 import org.bukkit.material.MaterialData;
 
 /**
+ * Entry point of the binary serialization API. The adapter registry is safe
+ * for concurrent use: adapters may be registered from one thread while other
+ * threads are serializing, in which case the running operations keep using
+ * the registry as it was when they resolved their adapters.
  *
  * @author Totom3
  */
@@ -37,6 +44,8 @@ public class BinaryIO {
 
     private static final Map<Class<?>, BinaryAdapter<?>> defaultAdapters;
 
+    private static final int MAX_INITIAL_CAPACITY = 1 << 16;
+
     private static final BinaryIO instance = new BinaryIO();
 
     static {
@@ -66,6 +75,14 @@ public class BinaryIO {
 	add(List.class, new ObjectAdapters.ListAdapter());
 	add(Set.class, new ObjectAdapters.SetAdapter());
 	add(Map.class, new ObjectAdapters.MapAdapter());
+	add(byte[].class, new ObjectAdapters.ByteArrayAdapter());
+	add(short[].class, new ObjectAdapters.ShortArrayAdapter());
+	add(char[].class, new ObjectAdapters.CharArrayAdapter());
+	add(int[].class, new ObjectAdapters.IntArrayAdapter());
+	add(long[].class, new ObjectAdapters.LongArrayAdapter());
+	add(float[].class, new ObjectAdapters.FloatArrayAdapter());
+	add(double[].class, new ObjectAdapters.DoubleArrayAdapter());
+	add(boolean[].class, new ObjectAdapters.BooleanArrayAdapter());
 
     }
 
@@ -75,8 +92,8 @@ public class BinaryIO {
 
     /**
      * Writes a {@code String} to an {@code DataOutput} by first writing the
-     * length (as an integer), and then the bytes, as defined by
-     * {@link String#getBytes()}, using the {@code UTF-8} encoding.
+     * length of its {@code UTF-8} encoding, in bytes (as an integer), and then
+     * the encoded bytes.
      * <p>
      * @param out the stream to write to
      * @param str the string to be written
@@ -92,8 +109,9 @@ public class BinaryIO {
 	    return;
 	}
 
-	out.writeInt(str.length());
-	out.writeBytes(str);
+	int length = StringCodec.encodedLength(str);
+	out.writeInt(length);
+	StringCodec.local().write(out, str, length);
     }
 
     public static void writeShortString(DataOutput out, String str) throws IOException {
@@ -105,12 +123,13 @@ public class BinaryIO {
 	    return;
 	}
 
-	if (str.length() > Short.MAX_VALUE) {
-	    throw new IllegalArgumentException("String has too many characters to be encoded with short: " + str.length() + " > " + Short.MAX_VALUE);
+	int length = StringCodec.encodedLength(str);
+	if (length > Short.MAX_VALUE) {
+	    throw new IllegalArgumentException("String has too many bytes to be encoded with short: " + length + " > " + Short.MAX_VALUE);
 	}
 
-	out.writeShort(str.length());
-	out.writeBytes(str);
+	out.writeShort(length);
+	StringCodec.local().write(out, str, length);
     }
 
     public static void writeByteString(DataOutput out, String str) throws IOException {
@@ -119,12 +138,13 @@ public class BinaryIO {
 	} else if (str.isEmpty()) {
 	    out.writeByte(0);
 	} else {
-	    if (str.length() > Byte.MAX_VALUE) {
-		throw new IllegalArgumentException("String has too many characters to be encoded with byte: " + str.length() + " > " + Byte.MAX_VALUE);
+	    int length = StringCodec.encodedLength(str);
+	    if (length > Byte.MAX_VALUE) {
+		throw new IllegalArgumentException("String has too many bytes to be encoded with byte: " + length + " > " + Byte.MAX_VALUE);
 	    }
 
-	    out.writeByte(str.length());
-	    out.writeBytes(str);
+	    out.writeByte(length);
+	    StringCodec.local().write(out, str, length);
 	}
     }
 
@@ -164,10 +184,11 @@ public class BinaryIO {
 	    return "";
 	}
 
-	byte bytes[] = new byte[length];
-	in.readFully(bytes);
+	if (length < 0) {
+	    throw new DeserializingException("Read invalid string length: " + length);
+	}
 
-	return new String(bytes, StandardCharsets.UTF_8);
+	return StringCodec.local().read(in, length);
     }
 
     /**
@@ -179,23 +200,45 @@ public class BinaryIO {
 	return instance;
     }
 
-    private final Map<Class<?>, BinaryAdapter<?>> adapters;
+    /**
+     * Marks a class for which no write adapter could be resolved, so that
+     * misses are cached just like hits.
+     */
+    private static final BinaryAdapter<Object> NO_ADAPTER = new BinaryAdapter<Object>() {
 
-    private BinaryIO() {
-	this.adapters = new HashMap<>();
+	@Override
+	public Object read(DeserializationContext context) throws IOException {
+	    throw new UnsupportedOperationException("Operation not supported.");
+	}
+
+	@Override
+	public void write(Object obj, SerializationContext context) throws IOException {
+	    throw new UnsupportedOperationException("Operation not supported.");
+	}
+    };
+
+    /**
+     * The current registry snapshot. Never mutated once published; replaced as
+     * a whole by {@link #registerAdapter(Class, BinaryAdapter)}.
+     */
+    private volatile Registry registry;
+    private final ConcurrentMap<Class<?>, EnumAdapter<?>> enumAdapters;
 
+    private BinaryIO() {
+	this.registry = new Registry(Collections.<Class<?>, BinaryAdapter<?>>emptyMap());
+	this.enumAdapters = new ConcurrentHashMap<>();
     }
 
     public <T> BinaryAdapter<T> getReadAdapter(Class<T> clazz) {
 	checkNotNull(clazz, "Clazz cannot be null.");
 
 	if (clazz.isEnum()) {
-	    return (BinaryAdapter<T>) new EnumAdapter<>((Class<? extends Enum>) clazz);
+	    return (BinaryAdapter<T>) getEnumAdapter((Class) clazz);
 	}
 
 	BinaryAdapter<?> adapter = defaultAdapters.get(clazz);
 	if (adapter == null) {
-	    adapter = adapters.get(clazz);
+	    adapter = registry.adapters.get(clazz);
 	}
 	return (BinaryAdapter<T>) adapter;
     }
@@ -203,8 +246,33 @@ public class BinaryIO {
     public <T> BinaryAdapter<? super T> getWriteAdapter(Class<T> clazz) {
 	checkNotNull(clazz, "Class cannot be null");
 
+	Registry reg = registry;
+	BinaryAdapter<?> adapter = reg.resolved.get(clazz);
+	if (adapter == null) {
+	    adapter = resolveWriteAdapter(clazz, reg.adapters);
+	    reg.resolved.putIfAbsent(clazz, (adapter == null) ? NO_ADAPTER : adapter);
+	} else if (adapter == NO_ADAPTER) {
+	    return null;
+	}
+
+	return (BinaryAdapter<? super T>) adapter;
+    }
+
+    <E extends Enum<E>> EnumAdapter<E> getEnumAdapter(Class<E> clazz) {
+	EnumAdapter<E> adapter = (EnumAdapter<E>) enumAdapters.get(clazz);
+	if (adapter == null) {
+	    adapter = new EnumAdapter<>(clazz);
+	    EnumAdapter<E> previous = (EnumAdapter<E>) enumAdapters.putIfAbsent(clazz, adapter);
+	    if (previous != null) {
+		adapter = previous;
+	    }
+	}
+	return adapter;
+    }
+
+    private <T> BinaryAdapter<? super T> resolveWriteAdapter(Class<T> clazz, Map<Class<?>, BinaryAdapter<?>> adapters) {
 	if (clazz.isEnum()) {
-	    return (BinaryAdapter<T>) new EnumAdapter<>((Class<? extends Enum>) clazz);
+	    return (BinaryAdapter<T>) getEnumAdapter((Class) clazz);
 	}
 
 	BinaryAdapter<? super T> adapter = getWriteAdapter(clazz, defaultAdapters);
@@ -261,19 +329,52 @@ public class BinaryIO {
 	return null;
     }
 
+    /**
+     * Returns an immutable snapshot of the adapters registered so far.
+     *
+     * @return the registered adapters, by class.
+     */
     public Map<Class<?>, BinaryAdapter<?>> getAllAdapters() {
-	return Collections.unmodifiableMap(adapters);
+	return registry.adapters;
+    }
+
+    /**
+     * Returns the current registry snapshot, replaced by every registration.
+     * Adapters resolved from a snapshot may be cached for as long as it is the
+     * current one.
+     */
+    Object registrySnapshot() {
+	return registry;
     }
 
     public <T> BinaryIO registerAdapter(Class<T> c, BinaryAdapter<? super T> adapter) {
 	Preconditions.checkNotNull(c, "Class cannot be null");
 	Preconditions.checkNotNull(adapter, "Adapter cannot be null");
 
-	adapters.put(c, adapter);
+	synchronized (this) {
+	    Map<Class<?>, BinaryAdapter<?>> copy = new HashMap<>(registry.adapters);
+	    copy.put(c, adapter);
+	    registry = new Registry(copy);
+	}
 
 	return this;
     }
 
+    /**
+     * Generates an adapter for a class with {@link BinaryField} annotations,
+     * and registers it.
+     *
+     * @param <T> the type of the objects.
+     * @param c   the class to generate an adapter for.
+     *
+     * @return this {@code BinaryIO}.
+     *
+     * @see GeneratedAdapter#of(Class)
+     */
+    public <T> BinaryIO registerGeneratedAdapter(Class<T> c) {
+	return registerAdapter(c, GeneratedAdapter.of(c));
+    }
+
     // --------------------------[ Object IO ]--------------------------
     <T> T readObject(Class<T> clazz,DeserializationContext context) throws IOException {
 	BinaryAdapter<T> adapt = getReadAdapter(clazz);
@@ -281,7 +382,7 @@ public class BinaryIO {
 	    throw new DeserializingException("Cannot readnpcd  object of type " + clazz.getName() + ": missing BinaryAdapter.");
 	}
 
-	return adapt.read(context);
+	return context.readTracked(adapt);
     }
 
     <T> void writeObject(T object, Class<T> clazz, SerializationContext context) throws IOException {
@@ -290,12 +391,14 @@ public class BinaryIO {
 	    throw new SerializingException("Cannot write object " + object + ": no BinaryAdapter set for " + clazz);
 	}
 
-	adapter.write(object, context);
+	context.writeTracked(object, adapter);
     }
 
     // --------------------------[ Enum IO ]--------------------------
     <E extends Enum<E>> E readEnum(Class<E> clazz, DeserializationContext context) throws IOException {
-	short ordinal = context.readShort();
+	int ordinal = (context.isEnabled(BinaryFeature.VARINTS))
+		? context.readVarInt()
+		: context.readShort();
 	E[] enumConstants = clazz.getEnumConstants();
 
 	if (ordinal < 0 || ordinal >= enumConstants.length) {
@@ -306,50 +409,118 @@ public class BinaryIO {
     }
 
     <E extends Enum<E>> void writeEnum(E e, SerializationContext context) throws IOException {
-	context.writeShort(e.ordinal());
+	if (context.isEnabled(BinaryFeature.VARINTS)) {
+	    context.writeVarInt(e.ordinal());
+	} else {
+	    context.writeShort(e.ordinal());
+	}
     }
 
     // --------------------------[ List IO ]--------------------------
+    /**
+     * Returns the capacity to create a collection with when about to read
+     * {@code length} elements. The length is read from the input and may be
+     * corrupt, so the capacity is capped; collections grow past it as usual.
+     */
+    static int initialCapacity(int length) {
+	return Math.min(length, MAX_INITIAL_CAPACITY);
+    }
+
     <T> List<T> readList(Class<T> clazz, DeserializationContext context) throws IOException {
 	BinaryAdapter<T> adapt = getReadAdapter(clazz);
 	if (adapt == null) {
 	    throw new DeserializingException("Cannot read list of type " + clazz.getName() + ": missing BinaryAdapter.");
 	}
 
-	List<T> list = new ArrayList<>();
-
 	// Read length
-	int length = context.readInt();
+	int length = context.readLength();
 	if (length == -1) {
 	    return null;
 	}
+	if (length < 0) {
+	    throw new DeserializingException("List length cannot be negative");
+	}
 
 	// Read elements
+	List<T> list = new ArrayList<>(initialCapacity(length));
 	for (int i = 0; i < length; ++i) {
-	    list.add(adapt.read(context));
+	    list.add(context.readTracked(adapt));
 	}
 
 	return list;
     }
 
+    <T> Set<T> readSet(Class<T> clazz, DeserializationContext context) throws IOException {
+	BinaryAdapter<T> adapt = getReadAdapter(clazz);
+	if (adapt == null) {
+	    throw new DeserializingException("Cannot read set of type " + clazz.getName() + ": missing BinaryAdapter.");
+	}
+
+	// Read length
+	int length = context.readLength();
+	if (length == -1) {
+	    return null;
+	}
+	if (length < 0) {
+	    throw new DeserializingException("Set length cannot be negative");
+	}
+
+	// Read elements
+	Set<T> set = Sets.newHashSetWithExpectedSize(initialCapacity(length));
+	for (int i = 0; i < length; ++i) {
+	    set.add(context.readTracked(adapt));
+	}
+
+	return set;
+    }
+
     <T> void writeCollection(Collection<? extends T> coll, SerializationContext context) throws IOException {
 	if (coll == null) {
-	    context.writeInt(-1);
+	    context.writeLength(-1);
 	    return;
 	}
 
 	// Write size
-	context.writeInt(coll.size());
+	context.writeLength(coll.size());
 
-	// Write elements
+	// Write elements, resolving the adapter again only when the class changes
+	Class<?> lastClass = null;
+	BinaryAdapter<? super T> adapter = null;
 	for (T obj : coll) {
 	    Class<?> clazz = obj.getClass();
-	    BinaryAdapter<? super T> adapter = getWriteAdapter((Class<T>) clazz);
-	    if (adapter == null) {
-		throw new SerializingException("Cannot write object  of type " + clazz.getName() + ": missing BinaryAdapter.");
+	    if (clazz != lastClass) {
+		adapter = getWriteAdapter((Class<T>) clazz);
+		if (adapter == null) {
+		    throw new SerializingException("Cannot write object  of type " + clazz.getName() + ": missing BinaryAdapter.");
+		}
+		lastClass = clazz;
+	    }
+
+	    context.writeTracked(obj, adapter);
+	}
+    }
+
+    <T> void writeCollection(Collection<? extends T> coll, Class<T> elementType, SerializationContext context) throws IOException {
+	if (coll == null) {
+	    context.writeLength(-1);
+	    return;
+	}
+
+	BinaryAdapter<? super T> adapter = getWriteAdapter(elementType);
+	if (adapter == null) {
+	    throw new SerializingException("Cannot write collection of type " + elementType.getName() + ": missing BinaryAdapter.");
+	}
+
+	// Write size
+	context.writeLength(coll.size());
+
+	// Write elements
+	for (T obj : coll) {
+	    if (!elementType.isInstance(obj)) {
+		throw new SerializingException("Cannot write " + obj + " in collection of type " + elementType.getName());
 	    }
 
-	    adapter.write(obj, context);
+	    context.writeTracked(obj, adapter);
 	}
     }
 
@@ -370,15 +541,15 @@ public class BinaryIO {
 	}
 
 	// Read size
-	int size = context.readInt();
+	int size = context.readLength();
 	if (size < 0) {
 	    throw new DeserializingException("Map size cannot be negative");
 	}
 
 	// Read keys and values
-	Map<K, V> map = new HashMap<>(size);
+	Map<K, V> map = Maps.newHashMapWithExpectedSize(initialCapacity(size));
 	for (int i = 0; i < size; ++i) {
-	    map.put(keyAdapter.read(context), valueAdapter.read(context));
+	    map.put(context.readTracked(keyAdapter), context.readTracked(valueAdapter));
 	}
 
 	return map;
@@ -387,7 +558,7 @@ public class BinaryIO {
     <K, V> void writeMap(Map<? extends K, ? extends V> map, SerializationContext context) throws IOException {
 
 	// Write size
-	context.writeInt(map.size());
+	context.writeLength(map.size());
 
 	// Write keys and values
 	for (Entry<? extends K, ? extends V> entry : map.entrySet()) {
@@ -408,8 +579,25 @@ public class BinaryIO {
 		throw new SerializingException("Cannot write value of type " + value.getClass().getName() + " from map: no BinaryAdapter set.");
 	    }
 
-	    keyAdapter.write(entry.getKey(), context);
-	    valueAdapter.write(entry.getValue(), context);
+	    context.writeTracked(key, keyAdapter);
+	    context.writeTracked(value, valueAdapter);
+	}
+    }
+
+    /**
+     * Immutable set of registered adapters, along with the write adapters
+     * resolved from it. Resolutions are only ever cached in the snapshot they
+     * were computed from, so a registration can never be shadowed by a stale
+     * cache entry.
+     */
+    private static final class Registry {
+
+	final Map<Class<?>, BinaryAdapter<?>> adapters;
+	final ConcurrentMap<Class<?>, BinaryAdapter<?>> resolved;
+
+	Registry(Map<Class<?>, BinaryAdapter<?>> adapters) {
+	    this.adapters = Collections.unmodifiableMap(adapters);
+	    this.resolved = new ConcurrentHashMap<>();
 	}
     }
 
@@ -0,0 +1,225 @@
+package io.github.totom3.commons.binary;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Reads and writes files made of independent records, which can be decoded in
+ * parallel. A record file starts with a header (see
+ * {@link SerializationContext#writeHeader()}), followed by the number of
+ * records, an index of their offsets, and the records themselves. Each record
+ * is written with the features of the file, but with its own reference
+ * tables, so that it can be decoded on its own.
+ * <p>
+ * All integers of the layout are big-endian; record offsets are relative to
+ * the first record, and the index holds one more offset than there are
+ * records, marking the end of the last one.
+ *
+ * @author Totom3
+ */
+public final class BinaryRecords {
+
+    /**
+     * Minimum number of records decoded by a single task.
+     */
+    private static final int RECORDS_PER_TASK = 8;
+
+    private BinaryRecords() {
+    }
+
+    /**
+     * Writes records to a file, replacing it atomically as specified by
+     * {@link BinaryFiles#writeBuffers(Path, ByteBuffer...)}.
+     *
+     * @param file     the file to write.
+     * @param records  the records to write; none may be {@code null}.
+     * @param features the features to write the records with.
+     *
+     * @throws IOException              if an I/O error occurs, or if a record
+     *                                  cannot be serialized.
+     * @throws IllegalArgumentException if {@link BinaryFeature#DEFLATE} is
+     *                                  specified: records are meant to be
+     *                                  read in place.
+     */
+    public static void write(Path file, Collection<?> records, BinaryFeature... features) throws IOException {
+	checkNotNull(records, "Records cannot be null");
+
+	EnumSet<BinaryFeature> set = EnumSet.noneOf(BinaryFeature.class);
+	set.addAll(Arrays.asList(features));
+	if (set.contains(BinaryFeature.DEFLATE)) {
+	    throw new IllegalArgumentException("Record files cannot be compressed");
+	}
+	int mask = BinaryFeature.toMask(set);
+
+	ByteBuffer index = ByteBuffer.allocate(4 + 4 * (records.size() + 1));
+	index.putInt(records.size());
+
+	ByteBufferOutput data = new ByteBufferOutput();
+	for (Object record : records) {
+	    checkNotNull(record, "Records cannot contain null");
+	    index.putInt(data.position());
+
+	    SerializationContext context = new BufferSerializationContext(data);
+	    context.setFeatureMask(mask);
+	    context.writeObject(record);
+	}
+	index.putInt(data.position());
+	index.flip();
+
+	ByteBuffer header = ByteBuffer.allocate(5);
+	header.putInt(SerializationContext.HEADER_MAGIC);
+	header.put((byte) mask);
+	header.flip();
+
+	BinaryFiles.writeBuffers(file, header, index, data.toReadableBuffer());
+    }
+
+    /**
+     * Reads every record of a file, decoding them in parallel on the common
+     * {@code ForkJoinPool}.
+     *
+     * @param <T>   the type of the records.
+     * @param file  the file to read.
+     * @param clazz the class of the records.
+     *
+     * @return the records, in the order they were written.
+     *
+     * @throws IOException if an I/O error occurs, or if a record cannot be
+     *                     deserialized.
+     */
+    public static <T> List<T> read(Path file, Class<T> clazz) throws IOException {
+	return read(file, clazz, ForkJoinPool.commonPool());
+    }
+
+    public static <T> List<T> read(Path file, Class<T> clazz, ForkJoinPool pool) throws IOException {
+	checkNotNull(file, "File cannot be null");
+
+	MappedByteBuffer buffer;
+	try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+	    buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+	}
+	return read(buffer, clazz, pool);
+    }
+
+    /**
+     * Reads every record from a buffer, between its position and its limit,
+     * decoding them in parallel on the specified pool. The position of the
+     * buffer is left untouched.
+     *
+     * @param <T>    the type of the records.
+     * @param buffer the buffer holding the record file.
+     * @param clazz  the class of the records.
+     * @param pool   the pool to decode the records on.
+     *
+     * @return the records, in the order they were written.
+     *
+     * @throws IOException if the layout is invalid, or if a record cannot be
+     *                     deserialized.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> List<T> read(ByteBuffer buffer, Class<T> clazz, ForkJoinPool pool) throws IOException {
+	checkNotNull(clazz, "Class cannot be null");
+	checkNotNull(pool, "Pool cannot be null");
+
+	BinaryAdapter<T> adapter = BinaryIO.get().getReadAdapter(clazz);
+	if (adapter == null) {
+	    throw new DeserializingException("Cannot read records of type " + clazz.getName() + ": missing BinaryAdapter.");
+	}
+
+	BufferDeserializationContext context = new BufferDeserializationContext(buffer.duplicate().order(ByteOrder.BIG_ENDIAN));
+	if (!context.readHeaderIfPresent()) {
+	    throw new DeserializingException("Missing record file header");
+	}
+	int features = context.featureMask();
+
+	int count = context.readInt();
+	if (count < 0 || count > (context.remaining() >> 2)) {
+	    throw new DeserializingException("Read invalid record count: " + count);
+	}
+
+	int[] offsets = new int[count + 1];
+	context.in().require(4 * offsets.length);
+	context.buffer().asIntBuffer().get(offsets);
+	context.position(context.position() + 4 * offsets.length);
+
+	ByteBuffer data = context.buffer().slice();
+	for (int i = 0; i < count; ++i) {
+	    if (offsets[i] < 0 || offsets[i] > offsets[i + 1]) {
+		throw new DeserializingException("Read invalid offset for record #" + i + ": " + offsets[i]);
+	    }
+	}
+	if (count > 0 && offsets[count] > data.remaining()) {
+	    throw new DeserializingException("Records end past the end of the file: " + offsets[count] + " > " + data.remaining());
+	}
+
+	Object[] records = new Object[count];
+	try {
+	    pool.invoke(new DecodeTask<>(data, offsets, features, adapter, records, 0, count));
+	} catch (UncheckedIOException ex) {
+	    throw ex.getCause();
+	}
+	return (List<T>) Arrays.asList(records);
+    }
+
+    /**
+     * Decodes a range of records, splitting it in halves until it is small
+     * enough.
+     */
+    private static final class DecodeTask<T> extends RecursiveAction {
+
+	private final ByteBuffer data;
+	private final int[] offsets;
+	private final int features;
+	private final BinaryAdapter<T> adapter;
+	private final Object[] records;
+	private final int from;
+	private final int to;
+
+	DecodeTask(ByteBuffer data, int[] offsets, int features, BinaryAdapter<T> adapter, Object[] records, int from, int to) {
+	    this.data = data;
+	    this.offsets = offsets;
+	    this.features = features;
+	    this.adapter = adapter;
+	    this.records = records;
+	    this.from = from;
+	    this.to = to;
+	}
+
+	@Override
+	protected void compute() {
+	    if (to - from <= RECORDS_PER_TASK) {
+		decode();
+		return;
+	    }
+
+	    int mid = (from + to) >>> 1;
+	    invokeAll(new DecodeTask<>(data, offsets, features, adapter, records, from, mid),
+		    new DecodeTask<>(data, offsets, features, adapter, records, mid, to));
+	}
+
+	private void decode() {
+	    for (int i = from; i < to; ++i) {
+		ByteBuffer record = data.duplicate();
+		record.limit(offsets[i + 1]).position(offsets[i]);
+		try {
+		    records[i] = DeserializationContext.readSection(record.slice(), features, adapter);
+		} catch (IOException ex) {
+		    throw new UncheckedIOException(new DeserializingException("Could not read record #" + i, ex));
+		}
+	    }
+	}
+    }
+}
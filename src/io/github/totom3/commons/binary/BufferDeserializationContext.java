@@ -0,0 +1,128 @@
+package io.github.totom3.commons.binary;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A {@code DeserializationContext} reading directly from a {@code ByteBuffer},
+ * through a {@link ByteBufferInput}. Works with every {@code BinaryAdapter},
+ * including those using {@link #in()} directly.
+ *
+ * @author Totom3
+ */
+public class BufferDeserializationContext extends DeserializationContext {
+
+    private final ByteBufferInput input;
+
+    public BufferDeserializationContext(byte[] bytes) {
+	this(new ByteBufferInput(bytes));
+    }
+
+    /**
+     * Creates a new {@code BufferDeserializationContext} reading from the
+     * provided buffer, from its current position up to its limit, and using
+     * its byte order.
+     *
+     * @param buffer the buffer to read from.
+     */
+    public BufferDeserializationContext(ByteBuffer buffer) {
+	this(new ByteBufferInput(buffer));
+    }
+
+    public BufferDeserializationContext(ByteBufferInput input) {
+	super(input);
+	this.input = input;
+    }
+
+    @Override
+    public ByteBufferInput in() {
+	return input;
+    }
+
+    public ByteBuffer buffer() {
+	return input.buffer();
+    }
+
+    public ByteOrder order() {
+	return input.order();
+    }
+
+    public int position() {
+	return input.position();
+    }
+
+    public void position(int position) {
+	input.position(position);
+    }
+
+    public int remaining() {
+	return input.remaining();
+    }
+
+    /**
+     * Reads a header written by {@link SerializationContext#writeHeader()} if
+     * the buffer starts with one. Otherwise, nothing is read and the enabled
+     * features are left untouched, so that data written without a header can
+     * still be read.
+     *
+     * @return {@code true} if a header was read, {@code false} otherwise.
+     *
+     * @throws IOException if the header is invalid.
+     */
+    public boolean readHeaderIfPresent() throws IOException {
+	ByteBuffer buffer = input.buffer();
+	if (buffer.remaining() < 5 || buffer.getInt(buffer.position()) != SerializationContext.HEADER_MAGIC) {
+	    return false;
+	}
+
+	readHeader();
+	return true;
+    }
+
+    // ---------------[ Deleguate Methods ]---------------
+    @Override
+    public byte readByte() throws IOException {
+	return input.readByte();
+    }
+
+    @Override
+    public int readUnsignedByte() throws IOException {
+	return input.readUnsignedByte();
+    }
+
+    @Override
+    public short readShort() throws IOException {
+	return input.readShort();
+    }
+
+    @Override
+    public int readUnsignedShort() throws IOException {
+	return input.readUnsignedShort();
+    }
+
+    @Override
+    public char readChar() throws IOException {
+	return input.readChar();
+    }
+
+    @Override
+    public int readInt() throws IOException {
+	return input.readInt();
+    }
+
+    @Override
+    public long readLong() throws IOException {
+	return input.readLong();
+    }
+
+    @Override
+    public float readFloat() throws IOException {
+	return input.readFloat();
+    }
+
+    @Override
+    public double readDouble() throws IOException {
+	return input.readDouble();
+    }
+}
@@ -0,0 +1,113 @@
+package io.github.totom3.commons.binary;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A {@code SerializationContext} writing directly into a growable
+ * {@code ByteBuffer}, through a {@link ByteBufferOutput}. Works with every
+ * {@code BinaryAdapter}, including those using {@link #out()} directly.
+ *
+ * @author Totom3
+ */
+public class BufferSerializationContext extends SerializationContext {
+
+    private final ByteBufferOutput output;
+
+    public BufferSerializationContext() {
+	this(new ByteBufferOutput());
+    }
+
+    public BufferSerializationContext(int initialCapacity) {
+	this(new ByteBufferOutput(initialCapacity));
+    }
+
+    /**
+     * Creates a new {@code BufferSerializationContext} writing into the
+     * provided buffer, starting at its current position, and using its byte
+     * order. The buffer is replaced by a larger one if it runs out of space;
+     * use {@link #buffer()} to retrieve the one in use.
+     *
+     * @param buffer the buffer to write into.
+     */
+    public BufferSerializationContext(ByteBuffer buffer) {
+	this(new ByteBufferOutput(buffer));
+    }
+
+    public BufferSerializationContext(ByteBufferOutput output) {
+	super(output);
+	this.output = output;
+    }
+
+    @Override
+    public ByteBufferOutput out() {
+	return output;
+    }
+
+    public ByteBuffer buffer() {
+	return output.buffer();
+    }
+
+    /**
+     * Returns a view of the bytes written so far, ready to be read or handed
+     * to a channel.
+     *
+     * @return a flipped duplicate of the underlying buffer.
+     */
+    public ByteBuffer toReadableBuffer() {
+	return output.toReadableBuffer();
+    }
+
+    public byte[] toByteArray() {
+	return output.toByteArray();
+    }
+
+    public ByteOrder order() {
+	return output.order();
+    }
+
+    public int position() {
+	return output.position();
+    }
+
+    public void position(int position) {
+	output.position(position);
+    }
+
+    // ---------------[ Deleguate Methods ]---------------
+    @Override
+    public void writeByte(int v) throws IOException {
+	output.writeByte(v);
+    }
+
+    @Override
+    public void writeShort(int v) throws IOException {
+	output.writeShort(v);
+    }
+
+    @Override
+    public void writeChar(int v) throws IOException {
+	output.writeChar(v);
+    }
+
+    @Override
+    public void writeInt(int v) throws IOException {
+	output.writeInt(v);
+    }
+
+    @Override
+    public void writeLong(long v) throws IOException {
+	output.writeLong(v);
+    }
+
+    @Override
+    public void writeFloat(float v) throws IOException {
+	output.writeFloat(v);
+    }
+
+    @Override
+    public void writeDouble(double v) throws IOException {
+	output.writeDouble(v);
+    }
+}
@@ -0,0 +1,172 @@
+package io.github.totom3.commons.binary;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A {@code DataInput} reading directly from a {@code ByteBuffer}, between its
+ * current position and its limit. The byte order of the buffer is honored by
+ * every multi-byte read. Reading past the limit throws an
+ * {@code EOFException}, as required by the {@code DataInput} contract.
+ *
+ * @author Totom3
+ */
+public final class ByteBufferInput implements DataInput {
+
+    private final ByteBuffer buffer;
+
+    public ByteBufferInput(byte[] bytes) {
+	this(ByteBuffer.wrap(bytes));
+    }
+
+    public ByteBufferInput(ByteBuffer buffer) {
+	this.buffer = checkNotNull(buffer, "Buffer cannot be null");
+    }
+
+    public ByteBuffer buffer() {
+	return buffer;
+    }
+
+    public ByteOrder order() {
+	return buffer.order();
+    }
+
+    public ByteBufferInput order(ByteOrder order) {
+	buffer.order(order);
+	return this;
+    }
+
+    public int position() {
+	return buffer.position();
+    }
+
+    public ByteBufferInput position(int position) {
+	buffer.position(position);
+	return this;
+    }
+
+    public int remaining() {
+	return buffer.remaining();
+    }
+
+    /**
+     * Makes sure at least {@code bytes} bytes are left to be read.
+     *
+     * @param bytes the number of bytes about to be read.
+     *
+     * @throws EOFException if less than {@code bytes} bytes are left.
+     */
+    public void require(int bytes) throws EOFException {
+	if (buffer.remaining() < bytes) {
+	    throw new EOFException("Expected " + bytes + " more bytes; only " + buffer.remaining() + " are left");
+	}
+    }
+
+    @Override
+    public void readFully(byte[] b) throws IOException {
+	readFully(b, 0, b.length);
+    }
+
+    @Override
+    public void readFully(byte[] b, int off, int len) throws IOException {
+	require(len);
+	buffer.get(b, off, len);
+    }
+
+    @Override
+    public int skipBytes(int n) {
+	int skipped = Math.max(0, Math.min(n, buffer.remaining()));
+	buffer.position(buffer.position() + skipped);
+	return skipped;
+    }
+
+    @Override
+    public boolean readBoolean() throws IOException {
+	return readByte() != 0;
+    }
+
+    @Override
+    public byte readByte() throws IOException {
+	require(1);
+	return buffer.get();
+    }
+
+    @Override
+    public int readUnsignedByte() throws IOException {
+	return readByte() & 0xFF;
+    }
+
+    @Override
+    public short readShort() throws IOException {
+	require(2);
+	return buffer.getShort();
+    }
+
+    @Override
+    public int readUnsignedShort() throws IOException {
+	return readShort() & 0xFFFF;
+    }
+
+    @Override
+    public char readChar() throws IOException {
+	require(2);
+	return buffer.getChar();
+    }
+
+    @Override
+    public int readInt() throws IOException {
+	require(4);
+	return buffer.getInt();
+    }
+
+    @Override
+    public long readLong() throws IOException {
+	require(8);
+	return buffer.getLong();
+    }
+
+    @Override
+    public float readFloat() throws IOException {
+	require(4);
+	return buffer.getFloat();
+    }
+
+    @Override
+    public double readDouble() throws IOException {
+	require(8);
+	return buffer.getDouble();
+    }
+
+    @Override
+    public String readLine() throws IOException {
+	if (!buffer.hasRemaining()) {
+	    return null;
+	}
+
+	StringBuilder sb = new StringBuilder();
+	while (buffer.hasRemaining()) {
+	    int c = buffer.get() & 0xFF;
+	    if (c == '\n') {
+		break;
+	    }
+	    if (c == '\r') {
+		if (buffer.hasRemaining() && buffer.get(buffer.position()) == '\n') {
+		    buffer.get();
+		}
+		break;
+	    }
+	    sb.append((char) c);
+	}
+	return sb.toString();
+    }
+
+    @Override
+    public String readUTF() throws IOException {
+	return DataInputStream.readUTF(this);
+    }
+}
@@ -0,0 +1,258 @@
+package io.github.totom3.commons.binary;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A {@code DataOutput} writing directly into a {@code ByteBuffer}, which is
+ * transparently replaced by a larger one (of the same kind: heap or direct)
+ * whenever it runs out of space. Unlike {@code DataOutputStream}, no method is
+ * synchronized.
+ * <p>
+ * The byte order of the buffer is honored by every multi-byte write. Note that
+ * {@code DataInput} implementations other than {@link ByteBufferInput} always
+ * read big-endian data.
+ *
+ * @author Totom3
+ */
+public final class ByteBufferOutput implements DataOutput {
+
+    private static final int DEFAULT_CAPACITY = 256;
+
+    private ByteBuffer buffer;
+
+    public ByteBufferOutput() {
+	this(DEFAULT_CAPACITY);
+    }
+
+    public ByteBufferOutput(int initialCapacity) {
+	this(ByteBuffer.allocate(initialCapacity));
+    }
+
+    /**
+     * Creates a new {@code ByteBufferOutput} writing into the provided buffer,
+     * starting at its current position. The buffer's byte order is kept.
+     *
+     * @param buffer the buffer to write into.
+     */
+    public ByteBufferOutput(ByteBuffer buffer) {
+	this.buffer = checkNotNull(buffer, "Buffer cannot be null");
+    }
+
+    /**
+     * Returns the buffer currently written into. Its position is the current
+     * write position. The returned instance may no longer be used by this
+     * output after the next write, if it had to be grown.
+     *
+     * @return the current buffer.
+     */
+    public ByteBuffer buffer() {
+	return buffer;
+    }
+
+    /**
+     * Returns a view of the bytes written so far, from offset {@code 0} to the
+     * current position, ready to be read or handed to a channel.
+     *
+     * @return a flipped duplicate of the current buffer.
+     */
+    public ByteBuffer toReadableBuffer() {
+	ByteBuffer dup = buffer.duplicate();
+	dup.flip();
+	return dup.order(buffer.order());
+    }
+
+    public byte[] toByteArray() {
+	ByteBuffer dup = toReadableBuffer();
+	byte[] bytes = new byte[dup.remaining()];
+	dup.get(bytes);
+	return bytes;
+    }
+
+    public ByteOrder order() {
+	return buffer.order();
+    }
+
+    public ByteBufferOutput order(ByteOrder order) {
+	buffer.order(order);
+	return this;
+    }
+
+    public int position() {
+	return buffer.position();
+    }
+
+    public ByteBufferOutput position(int position) {
+	ensureCapacity(position - buffer.position());
+	buffer.position(position);
+	return this;
+    }
+
+    /**
+     * Resets the write position to {@code 0}, so that the underlying buffer can
+     * be reused.
+     *
+     * @return this {@code ByteBufferOutput}.
+     */
+    public ByteBufferOutput clear() {
+	buffer.clear();
+	return this;
+    }
+
+    /**
+     * Makes sure that at least {@code bytes} bytes can be written without the
+     * buffer having to be grown.
+     *
+     * @param bytes the number of bytes about to be written.
+     */
+    public void ensureCapacity(int bytes) {
+	if (buffer.remaining() >= bytes) {
+	    return;
+	}
+
+	int required = buffer.position() + bytes;
+	if (required < 0) {
+	    throw new IllegalStateException("Buffer cannot grow past " + Integer.MAX_VALUE + " bytes");
+	}
+
+	int newCapacity = Math.max(required, buffer.capacity() << 1);
+	if (newCapacity < 0) {
+	    newCapacity = Integer.MAX_VALUE;
+	}
+
+	ByteBuffer grown = (buffer.isDirect())
+		? ByteBuffer.allocateDirect(newCapacity)
+		: ByteBuffer.allocate(newCapacity);
+	grown.order(buffer.order());
+
+	buffer.flip();
+	grown.put(buffer);
+	buffer = grown;
+    }
+
+    @Override
+    public void write(int b) {
+	ensureCapacity(1);
+	buffer.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b) {
+	write(b, 0, b.length);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+	ensureCapacity(len);
+	buffer.put(b, off, len);
+    }
+
+    public void write(ByteBuffer src) {
+	ensureCapacity(src.remaining());
+	buffer.put(src);
+    }
+
+    @Override
+    public void writeBoolean(boolean v) {
+	write(v ? 1 : 0);
+    }
+
+    @Override
+    public void writeByte(int v) {
+	write(v);
+    }
+
+    @Override
+    public void writeShort(int v) {
+	ensureCapacity(2);
+	buffer.putShort((short) v);
+    }
+
+    @Override
+    public void writeChar(int v) {
+	ensureCapacity(2);
+	buffer.putChar((char) v);
+    }
+
+    @Override
+    public void writeInt(int v) {
+	ensureCapacity(4);
+	buffer.putInt(v);
+    }
+
+    @Override
+    public void writeLong(long v) {
+	ensureCapacity(8);
+	buffer.putLong(v);
+    }
+
+    @Override
+    public void writeFloat(float v) {
+	ensureCapacity(4);
+	buffer.putFloat(v);
+    }
+
+    @Override
+    public void writeDouble(double v) {
+	ensureCapacity(8);
+	buffer.putDouble(v);
+    }
+
+    @Override
+    public void writeBytes(String s) {
+	int len = s.length();
+	ensureCapacity(len);
+	for (int i = 0; i < len; ++i) {
+	    buffer.put((byte) s.charAt(i));
+	}
+    }
+
+    @Override
+    public void writeChars(String s) {
+	int len = s.length();
+	ensureCapacity(len << 1);
+	for (int i = 0; i < len; ++i) {
+	    buffer.putChar(s.charAt(i));
+	}
+    }
+
+    @Override
+    public void writeUTF(String s) throws IOException {
+	int len = s.length();
+	int utfLength = 0;
+	for (int i = 0; i < len; ++i) {
+	    char c = s.charAt(i);
+	    if (c >= 0x0001 && c <= 0x007F) {
+		utfLength++;
+	    } else if (c > 0x07FF) {
+		utfLength += 3;
+	    } else {
+		utfLength += 2;
+	    }
+	}
+
+	if (utfLength > 0xFFFF) {
+	    throw new UTFDataFormatException("Encoded string too long: " + utfLength + " bytes");
+	}
+
+	ensureCapacity(utfLength + 2);
+	buffer.putShort((short) utfLength);
+	for (int i = 0; i < len; ++i) {
+	    char c = s.charAt(i);
+	    if (c >= 0x0001 && c <= 0x007F) {
+		buffer.put((byte) c);
+	    } else if (c > 0x07FF) {
+		buffer.put((byte) (0xE0 | ((c >> 12) & 0x0F)));
+		buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+		buffer.put((byte) (0x80 | (c & 0x3F)));
+	    } else {
+		buffer.put((byte) (0xC0 | ((c >> 6) & 0x1F)));
+		buffer.put((byte) (0x80 | (c & 0x3F)));
+	    }
+	}
+    }
+}
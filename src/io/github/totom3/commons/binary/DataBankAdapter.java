@@ -1,23 +1,47 @@
 package io.github.totom3.commons.binary;
 
-import io.github.totom3.commons.misc.DataBank;
+import io.github.totom3.commons.misc.AbstractDataBank;
 import java.io.IOException;
-import java.util.Map.Entry;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
+ * Writes the values of an {@link AbstractDataBank} along with their IDs.
+ * <p>
+ * Banks are written in bulk: {@link AbstractDataBank#RESERVED_ID}, a format
+ * byte, the number of values, and then the values. If the IDs are exactly
+ * {@code 1} to the number of values, they are implied by position; otherwise
+ * every value is preceded by its ID. Banks written by previous versions, as a
+ * sequence of IDs and values ended by the ID {@code 0}, can still be read,
+ * unless they use the ID {@code -1}, which banks used to hand out as their
+ * 65535th one and is now reserved. Such banks are rejected with a
+ * {@code DeserializingException}; if the ID {@code -1} comes first, it is
+ * taken for the bulk marker, and reading fails on the bytes that follow.
  *
  * @author Totom3
  * @param <E>
  * @param <T>
  */
-public abstract class DataBankAdapter<E, T extends DataBank<E>> implements BinaryAdapter<T> {
+public abstract class DataBankAdapter<E, T extends AbstractDataBank<E>> implements BinaryAdapter<T> {
+
+    private static final byte SPARSE_FORMAT = 0;
+    private static final byte DENSE_FORMAT = 1;
 
     @Override
     public final T read(DeserializationContext context) throws IOException {
 	T bank = supply();
 
-	short id;
-	while ((id = context.readShort()) != 0) {
+	short id = readId(context);
+	if (id == AbstractDataBank.RESERVED_ID) {
+	    readBulk(bank, context);
+	    return bank;
+	}
+
+	for (; id != 0; id = readId(context)) {
+	    if (id == AbstractDataBank.RESERVED_ID) {
+		throw new DeserializingException("Legacy DataBank uses the reserved ID " + id);
+	    }
+
 	    E val;
 	    try {
 		val = readElement(context);
@@ -35,25 +59,76 @@ public abstract class DataBankAdapter<E, T extends DataBank<E>> implements Binar
 	return bank;
     }
 
+    private void readBulk(T bank, DeserializationContext context) throws IOException {
+	byte format = context.readByte();
+	if (format != SPARSE_FORMAT && format != DENSE_FORMAT) {
+	    throw new DeserializingException("Read invalid DataBank format: " + format);
+	}
+
+	int count = context.readLength();
+	if (count < 0 || count > bank.maxSize()) {
+	    throw new DeserializingException("Read invalid DataBank size: " + count);
+	}
+
+	short[] ids = (format == SPARSE_FORMAT) ? new short[count] : null;
+	List<E> values = new ArrayList<>(BinaryIO.initialCapacity(count));
+	for (int i = 0; i < count; ++i) {
+	    short id = (ids == null) ? (short) (i + 1) : (ids[i] = readId(context));
+	    try {
+		values.add(readElement(context));
+	    } catch (IOException ex) {
+		throw new DeserializingException("Could not parse element with ID " + id, ex);
+	    }
+	}
+
+	try {
+	    bank.load(ids, values);
+	} catch (IllegalArgumentException | NullPointerException ex) {
+	    throw new DeserializingException("Invalid cache", ex);
+	}
+    }
+
     @Override
     public final void write(T obj, SerializationContext context) throws IOException {
-	for (Entry<Short, E> entry : obj.all().entrySet()) {
-	    short id = entry.getKey();
-	    E val = entry.getValue();
+	short[] ids = obj.ids();
+	boolean dense = ids.length == 0 || (ids[ids.length - 1] & 0xFFFF) == ids.length;
+
+	writeId(AbstractDataBank.RESERVED_ID, context);
+	context.writeByte(dense ? DENSE_FORMAT : SPARSE_FORMAT);
+	context.writeLength(ids.length);
+
+	for (short id : ids) {
+	    E val = obj.get(id);
+	    if (val == null) {
+		throw new SerializingException("DataBank was modified while being written: ID " + id + " was removed");
+	    }
 
 	    // Write ID
-	    context.writeShort(id);
+	    if (!dense) {
+		writeId(id, context);
+	    }
 
 	    // Write object
 	    try {
 		writeElement(val, context);
 	    } catch (IOException ex) {
-		throw new DeserializingException("Could not write element " + val + " with ID " + id, ex);
+		throw new SerializingException("Could not write element " + val + " with ID " + id, ex);
 	    }
 	}
+    }
 
-	// Write ending mark
-	context.writeShort(0);
+    private static short readId(DeserializationContext context) throws IOException {
+	return (context.isEnabled(BinaryFeature.VARINTS))
+		? (short) context.readVarInt()
+		: context.readShort();
+    }
+
+    private static void writeId(short id, SerializationContext context) throws IOException {
+	if (context.isEnabled(BinaryFeature.VARINTS)) {
+	    context.writeVarInt(id & 0xFFFF);
+	} else {
+	    context.writeShort(id);
+	}
     }
 
     protected abstract T supply();
@@ -4,9 +4,14 @@ import com.google.common.base.Preconditions;
 import java.io.Closeable;
 import java.io.DataInput;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  *
@@ -14,18 +19,88 @@ import java.util.Map;
  */
 public class DeserializationContext extends BinaryDataBank implements Closeable {
 
+    /**
+     * Placeholder for objects which are still being read.
+     */
+    private static final Object PENDING = new Object();
+
+    /**
+     * Bytes of a primitive array allocated at a time, when the input cannot
+     * tell how many bytes are left.
+     */
+    private static final int ARRAY_CHUNK = 1 << 16;
+
     private final BinaryIO binaryIO;
     private final DataInput in;
+    private final StringCodec strings;
+    private ArrayCodec arrays;
+    private List<String> stringReferences;
+    private List<Object> objectReferences;
+    private Deque<Integer> pendingReferences;
+    private int features;
 
     public DeserializationContext(DataInput in) {
 	this.binaryIO = BinaryIO.get();
 	this.in = Preconditions.checkNotNull(in);
+	this.strings = new StringCodec();
     }
 
     public DataInput in() {
 	return in;
     }
 
+    public boolean isEnabled(BinaryFeature feature) {
+	return (features & feature.mask()) != 0;
+    }
+
+    /**
+     * Enables or disables a feature for everything read from now on. It must
+     * match the features used by the writing side at the same point of the
+     * stream.
+     *
+     * @param feature the feature to enable or disable.
+     * @param enabled whether to enable the feature.
+     */
+    public void setEnabled(BinaryFeature feature, boolean enabled) {
+	if (enabled) {
+	    features |= feature.mask();
+	} else {
+	    features &= ~feature.mask();
+	}
+    }
+
+    public Set<BinaryFeature> getFeatures() {
+	return BinaryFeature.fromMask(features);
+    }
+
+    int featureMask() {
+	return features;
+    }
+
+    void setFeatureMask(int features) {
+	this.features = features;
+    }
+
+    /**
+     * Reads a header written by {@link SerializationContext#writeHeader()},
+     * and enables the features it records, disabling all others.
+     * <p>
+     * @throws DeserializingException if no valid header could be read.
+     * @throws IOException            if an I/O error occurs.
+     */
+    public void readHeader() throws IOException {
+	int magic = readInt();
+	if (magic != SerializationContext.HEADER_MAGIC) {
+	    throw new DeserializingException("Expected header magic number " + Integer.toHexString(SerializationContext.HEADER_MAGIC) + "; got instead " + Integer.toHexString(magic));
+	}
+
+	int mask = readUnsignedByte();
+	if ((mask & ~BinaryFeature.allMask()) != 0) {
+	    throw new DeserializingException("Unsupported features in header: " + Integer.toBinaryString(mask));
+	}
+	features = mask;
+    }
+
     public <E extends Enum<E>> E readEnum(Class<E> clazz) throws IOException {
 	return binaryIO.readEnum(clazz, this);
     }
@@ -38,12 +113,20 @@ public class DeserializationContext extends BinaryDataBank implements Closeable
 	return binaryIO.readList(clazz, this);
     }
 
+    public <T> Set<T> readSet(Class<T> clazz) throws IOException {
+	return binaryIO.readSet(clazz, this);
+    }
+
     public <K, V> Map<K, V> readMap(Class<? extends K> keyClass, Class<? extends V> valueClass) throws IOException {
 	return binaryIO.readMap(keyClass, valueClass, this);
     }
 
     public String readString() throws IOException {
-	int length = in.readInt();
+	if (isEnabled(BinaryFeature.STRING_REFERENCES)) {
+	    return readStringOrReference();
+	}
+
+	int length = readLength();
 	if (length == -1) {
 	    return null;
 	}
@@ -52,10 +135,132 @@ public class DeserializationContext extends BinaryDataBank implements Closeable
 	    return "";
 	}
 
-	byte[] ba = new byte[length];
-	in.readFully(ba);
+	return strings.read(in, length);
+    }
+
+    /**
+     * Reads an object written by
+     * {@link SerializationContext#writeTracked(Object, BinaryAdapter)}, using
+     * the provided adapter unless a reference was written.
+     */
+    <T> T readTracked(BinaryAdapter<T> adapter) throws IOException {
+	if (!isEnabled(BinaryFeature.OBJECT_REFERENCES)) {
+	    return adapter.read(this);
+	}
+
+	if (objectReferences == null) {
+	    objectReferences = new ArrayList<>();
+	    pendingReferences = new ArrayDeque<>();
+	}
+
+	int handle = (isEnabled(BinaryFeature.VARINTS))
+		? readVarInt()
+		: readInt();
+
+	if (handle != 0) {
+	    int index = handle - 1;
+	    if (index < 0 || index >= objectReferences.size()) {
+		throw new DeserializingException("Read reference to unknown object #" + index + "; only " + objectReferences.size() + " were read so far");
+	    }
+
+	    Object obj = objectReferences.get(index);
+	    if (obj == PENDING) {
+		throw new DeserializingException("Read cyclic reference to object #" + index + ", which is still being read; its adapter must call bindReference()");
+	    }
+	    return (T) obj;
+	}
+
+	int index = objectReferences.size();
+	objectReferences.add(PENDING);
+	pendingReferences.push(index);
+	try {
+	    T obj = adapter.read(this);
+	    objectReferences.set(index, obj);
+	    return obj;
+	} finally {
+	    pendingReferences.pop();
+	}
+    }
+
+    /**
+     * Makes the object currently being read available to references read
+     * before it is complete. Adapters of objects which may be part of a cycle
+     * should call this method right after creating their instance, and before
+     * reading any nested object. Does nothing unless
+     * {@link BinaryFeature#OBJECT_REFERENCES} is enabled.
+     *
+     * @param obj the instance being read.
+     */
+    public void bindReference(Object obj) {
+	if (pendingReferences == null || pendingReferences.isEmpty()) {
+	    return;
+	}
+	objectReferences.set(pendingReferences.peek(), obj);
+    }
+
+    private String readStringOrReference() throws IOException {
+	int tag = (isEnabled(BinaryFeature.VARINTS))
+		? readSignedVarInt()
+		: readInt();
+
+	if (tag == -1) {
+	    return null;
+	}
+	if (tag == 0) {
+	    return "";
+	}
+
+	if (stringReferences == null) {
+	    stringReferences = new ArrayList<>();
+	}
 
-	return new String(ba, StandardCharsets.UTF_8);
+	if (tag < 0) {
+	    int index = -2 - tag;
+	    if (index >= stringReferences.size()) {
+		throw new DeserializingException("Read reference to unknown string #" + index + "; only " + stringReferences.size() + " were read so far");
+	    }
+	    return stringReferences.get(index);
+	}
+
+	String str = strings.read(in, tag);
+	if (stringReferences.size() < SerializationContext.MAX_STRING_REFERENCES) {
+	    stringReferences.add(str);
+	}
+	return str;
+    }
+
+    /**
+     * Reads a length written by {@link SerializationContext#writeLength(int)}.
+     *
+     * @return the length read; {@code -1} standing for {@code null}.
+     *
+     * @throws DeserializingException if the length read is invalid.
+     * @throws IOException            if an I/O error occurs.
+     */
+    public int readLength() throws IOException {
+	int length = (isEnabled(BinaryFeature.VARINTS))
+		? readVarInt() - 1
+		: readInt();
+	if (length < -1) {
+	    throw new DeserializingException("Read invalid length: " + length);
+	}
+	return length;
+    }
+
+    public int readVarInt() throws IOException {
+	return VarInts.readVarInt(in());
+    }
+
+    public long readVarLong() throws IOException {
+	return VarInts.readVarLong(in());
+    }
+
+    public int readSignedVarInt() throws IOException {
+	return VarInts.readSignedVarInt(in());
+    }
+
+    public long readSignedVarLong() throws IOException {
+	return VarInts.readSignedVarLong(in());
     }
 
     public boolean readBoolean() throws IOException {
@@ -76,6 +281,234 @@ public class DeserializationContext extends BinaryDataBank implements Closeable
 	}
     }
 
+    // ---------------[ Lazy Sections ]---------------
+    /**
+     * Reads a section written by {@link SerializationContext#writeLazy(Object)}
+     * without decoding it. Buffer-backed contexts keep a view of their buffer;
+     * others copy the section.
+     *
+     * @param <T>   the type of the object.
+     * @param clazz the class of the object.
+     *
+     * @return a lazy value decoding the section when first accessed.
+     *
+     * @throws IOException if an I/O error occurs, or if there is no adapter
+     *                     for {@code clazz}.
+     */
+    public <T> Lazy<T> readLazy(Class<T> clazz) throws IOException {
+	BinaryAdapter<T> adapter = binaryIO.getReadAdapter(clazz);
+	if (adapter == null) {
+	    throw new DeserializingException("Cannot read object of type " + clazz.getName() + ": missing BinaryAdapter.");
+	}
+
+	ByteBuffer section = readSection();
+	return (section == null)
+		? Lazy.<T>of(null)
+		: new Lazy<>(section, features, adapter);
+    }
+
+    /**
+     * Reads the length and bytes of a section written by
+     * {@link SerializationContext#writeSection(Object, BinaryAdapter)}.
+     *
+     * @return the section, positioned at its start, or {@code null} if a
+     *         {@code null} object was written instead.
+     */
+    ByteBuffer readSection() throws IOException {
+	int length = readInt();
+	if (length == -1) {
+	    return null;
+	}
+	if (length < 0) {
+	    throw new DeserializingException("Read invalid section length: " + length);
+	}
+
+	if (in instanceof ByteBufferInput) {
+	    ByteBufferInput bufIn = (ByteBufferInput) in;
+	    bufIn.require(length);
+	    ByteBuffer buffer = bufIn.buffer();
+	    ByteBuffer section = buffer.slice().order(buffer.order());
+	    section.limit(length);
+	    buffer.position(buffer.position() + length);
+	    return section;
+	}
+
+	// Grown as the bytes arrive, so that a corrupt length fails early
+	byte[] bytes = new byte[initialArrayLength(length, 1)];
+	in.readFully(bytes);
+	while (bytes.length < length) {
+	    int off = bytes.length;
+	    bytes = Arrays.copyOf(bytes, grownArrayLength(off, length));
+	    in.readFully(bytes, off, bytes.length - off);
+	}
+	return ByteBuffer.wrap(bytes);
+    }
+
+    /**
+     * Decodes a section returned by {@link #readSection()}, with the specified
+     * features and fresh reference tables.
+     */
+    static <T> T readSection(ByteBuffer section, int features, BinaryAdapter<T> adapter) throws IOException {
+	DeserializationContext context = new BufferDeserializationContext(section);
+	context.features = features;
+	return context.readTracked(adapter);
+    }
+
+    // ---------------[ Primitive Arrays ]---------------
+    public byte[] readByteArray() throws IOException {
+	int length = readLength();
+	if (length == -1) {
+	    return null;
+	}
+
+	byte[] arr = new byte[initialArrayLength(length, 1)];
+	in.readFully(arr);
+	while (arr.length < length) {
+	    int off = arr.length;
+	    arr = Arrays.copyOf(arr, grownArrayLength(off, length));
+	    in.readFully(arr, off, arr.length - off);
+	}
+	return arr;
+    }
+
+    public boolean[] readBooleanArray() throws IOException {
+	int length = readLength();
+	if (length == -1) {
+	    return null;
+	}
+
+	boolean[] arr = new boolean[initialArrayLength(length, 1)];
+	arrays().readBooleans(in, arr, 0, arr.length);
+	while (arr.length < length) {
+	    int off = arr.length;
+	    arr = Arrays.copyOf(arr, grownArrayLength(off, length));
+	    arrays().readBooleans(in, arr, off, arr.length - off);
+	}
+	return arr;
+    }
+
+    public short[] readShortArray() throws IOException {
+	int length = readLength();
+	if (length == -1) {
+	    return null;
+	}
+
+	short[] arr = new short[initialArrayLength(length, 2)];
+	arrays().readShorts(in, arr, 0, arr.length);
+	while (arr.length < length) {
+	    int off = arr.length;
+	    arr = Arrays.copyOf(arr, grownArrayLength(off, length));
+	    arrays().readShorts(in, arr, off, arr.length - off);
+	}
+	return arr;
+    }
+
+    public char[] readCharArray() throws IOException {
+	int length = readLength();
+	if (length == -1) {
+	    return null;
+	}
+
+	char[] arr = new char[initialArrayLength(length, 2)];
+	arrays().readChars(in, arr, 0, arr.length);
+	while (arr.length < length) {
+	    int off = arr.length;
+	    arr = Arrays.copyOf(arr, grownArrayLength(off, length));
+	    arrays().readChars(in, arr, off, arr.length - off);
+	}
+	return arr;
+    }
+
+    public int[] readIntArray() throws IOException {
+	int length = readLength();
+	if (length == -1) {
+	    return null;
+	}
+
+	int[] arr = new int[initialArrayLength(length, 4)];
+	arrays().readInts(in, arr, 0, arr.length);
+	while (arr.length < length) {
+	    int off = arr.length;
+	    arr = Arrays.copyOf(arr, grownArrayLength(off, length));
+	    arrays().readInts(in, arr, off, arr.length - off);
+	}
+	return arr;
+    }
+
+    public long[] readLongArray() throws IOException {
+	int length = readLength();
+	if (length == -1) {
+	    return null;
+	}
+
+	long[] arr = new long[initialArrayLength(length, 8)];
+	arrays().readLongs(in, arr, 0, arr.length);
+	while (arr.length < length) {
+	    int off = arr.length;
+	    arr = Arrays.copyOf(arr, grownArrayLength(off, length));
+	    arrays().readLongs(in, arr, off, arr.length - off);
+	}
+	return arr;
+    }
+
+    public float[] readFloatArray() throws IOException {
+	int length = readLength();
+	if (length == -1) {
+	    return null;
+	}
+
+	float[] arr = new float[initialArrayLength(length, 4)];
+	arrays().readFloats(in, arr, 0, arr.length);
+	while (arr.length < length) {
+	    int off = arr.length;
+	    arr = Arrays.copyOf(arr, grownArrayLength(off, length));
+	    arrays().readFloats(in, arr, off, arr.length - off);
+	}
+	return arr;
+    }
+
+    public double[] readDoubleArray() throws IOException {
+	int length = readLength();
+	if (length == -1) {
+	    return null;
+	}
+
+	double[] arr = new double[initialArrayLength(length, 8)];
+	arrays().readDoubles(in, arr, 0, arr.length);
+	while (arr.length < length) {
+	    int off = arr.length;
+	    arr = Arrays.copyOf(arr, grownArrayLength(off, length));
+	    arrays().readDoubles(in, arr, off, arr.length - off);
+	}
+	return arr;
+    }
+
+    /**
+     * Returns how many elements of an array of {@code length} elements can be
+     * allocated upfront. A buffered input must hold the whole array; any
+     * other input is read a bounded chunk at a time, so that a corrupt length
+     * fails with an {@code EOFException} instead of a huge allocation.
+     */
+    private int initialArrayLength(int length, int elementSize) throws IOException {
+	if (in instanceof ByteBufferInput) {
+	    long bytes = (long) length * elementSize;
+	    ((ByteBufferInput) in).require((int) Math.min(bytes, Integer.MAX_VALUE));
+	    return length;
+	}
+	return Math.min(length, ARRAY_CHUNK / elementSize);
+    }
+
+    private static int grownArrayLength(int current, int length) {
+	return (int) Math.min((long) current << 1, length);
+    }
+
+    private ArrayCodec arrays() {
+	if (arrays == null) {
+	    arrays = new ArrayCodec();
+	}
+	return arrays;
+    }
+
     // ---------------[ Deleguate Methods ]---------------
     public byte readByte() throws IOException {
 	return in.readByte();
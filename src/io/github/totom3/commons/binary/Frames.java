@@ -0,0 +1,65 @@
+package io.github.totom3.commons.binary;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reads records framed as sections (see
+ * {@link SerializationContext#writeSection(Object, BinaryAdapter)}), for the
+ * adapters supporting framing. Since the length of a framed record is known
+ * before it is decoded, records with an unknown type or version, or which
+ * fail to decode, can be skipped without losing track of the stream.
+ *
+ * @author Totom3
+ */
+final class Frames {
+
+    private static final Logger LOGGER = Logger.getLogger(Frames.class.getName());
+
+    private Frames() {
+    }
+
+    /**
+     * Reads a framed record.
+     *
+     * @param adapter      the adapter to decode the record with, or
+     *                     {@code null} if its type is unknown.
+     * @param skipFailures whether to return {@code null} instead of throwing
+     *                     if the record cannot be decoded.
+     * @param record       describes the record, for error messages.
+     * @param context      the context to read from.
+     *
+     * @return the record, or {@code null} if it was skipped.
+     *
+     * @throws IOException if an I/O error occurs, or if the record cannot be
+     *                     decoded and {@code skipFailures} is {@code false}.
+     *                     The context is positioned after the record in that
+     *                     case, unless the frame itself could not be read.
+     */
+    static <T> T read(BinaryAdapter<T> adapter, boolean skipFailures, String record, DeserializationContext context) throws IOException {
+	ByteBuffer section = context.readSection();
+	if (section == null) {
+	    return null;
+	}
+
+	if (adapter == null) {
+	    if (skipFailures) {
+		LOGGER.log(Level.WARNING, "Skipped {0} bytes of {1}: missing BinaryAdapter", new Object[]{section.remaining(), record});
+		return null;
+	    }
+	    throw new DeserializingException("Missing BinaryAdapter for " + record);
+	}
+
+	try {
+	    return DeserializationContext.readSection(section, context.featureMask(), adapter);
+	} catch (IOException | RuntimeException ex) {
+	    if (!skipFailures) {
+		throw ex;
+	    }
+	    LOGGER.log(Level.WARNING, "Skipped corrupted " + record, ex);
+	    return null;
+	}
+    }
+}
@@ -0,0 +1,413 @@
+package io.github.totom3.commons.binary;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A {@code BinaryAdapter} for classes whose fields are annotated with
+ * {@link BinaryField}. The fields are looked up once, when the adapter is
+ * created, and accessed through method handles afterwards, which skips the
+ * access checks of reflection and the token dispatch of
+ * {@link ObjectAdapters}. The handles are held per adapter rather than in
+ * constants, so each access is still an indirect call.
+ * <p>
+ * Primitive and {@code String} fields are written directly. Every other field
+ * is written with the adapter of its declared type, resolved when the field
+ * is first written or read, and again after adapters are registered, and
+ * preceded by a boolean telling whether it is {@code null}. The declared
+ * type, rather than the class of the value, is used on both sides, so it must
+ * have a read adapter registered.
+ * <p>
+ * Objects are created with the no-argument constructor of the class, which
+ * may be private. Fields may be private and final, but not static.
+ *
+ * @author Totom3
+ * @param <T> the type of the objects.
+ */
+public final class GeneratedAdapter<T> implements BinaryAdapter<T> {
+
+    /**
+     * Generates an adapter writing every annotated field of a class.
+     *
+     * @param <T>   the type of the objects.
+     * @param clazz the class to generate an adapter for.
+     *
+     * @return the new adapter.
+     *
+     * @throws IllegalArgumentException if the class is abstract, has no
+     *                                  no-argument constructor, or if its
+     *                                  fields are not valid.
+     */
+    public static <T> GeneratedAdapter<T> of(Class<T> clazz) {
+	return of(clazz, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Generates an adapter writing the annotated fields of a class which
+     * exist in the specified format version.
+     *
+     * @param <T>     the type of the objects.
+     * @param clazz   the class to generate an adapter for.
+     * @param version the format version.
+     *
+     * @return the new adapter.
+     *
+     * @throws IllegalArgumentException if the class is abstract, has no
+     *                                  no-argument constructor, or if its
+     *                                  fields are not valid.
+     * @see BinaryField#since()
+     */
+    public static <T> GeneratedAdapter<T> of(Class<T> clazz, int version) {
+	List<FieldCodec> codecs = new ArrayList<>();
+	for (FieldCodec codec : scan(clazz)) {
+	    if (codec.since <= version) {
+		codecs.add(codec);
+	    }
+	}
+	return new GeneratedAdapter<>(clazz, constructor(clazz), codecs.toArray(new FieldCodec[codecs.size()]));
+    }
+
+    private final Class<T> clazz;
+    private final MethodHandle constructor;
+    private final FieldCodec[] codecs;
+
+    private GeneratedAdapter(Class<T> clazz, MethodHandle constructor, FieldCodec[] codecs) {
+	this.clazz = clazz;
+	this.constructor = constructor;
+	this.codecs = codecs;
+    }
+
+    public Class<T> getType() {
+	return clazz;
+    }
+
+    @Override
+    public T read(DeserializationContext context) throws IOException {
+	Object obj;
+	try {
+	    obj = constructor.invokeExact();
+	} catch (Throwable ex) {
+	    throw new DeserializingException("Could not create instance of " + clazz.getName(), ex);
+	}
+	context.bindReference(obj);
+
+	for (FieldCodec codec : codecs) {
+	    try {
+		codec.read(obj, context);
+	    } catch (IOException | RuntimeException | Error ex) {
+		throw ex;
+	    } catch (Throwable ex) {
+		throw new DeserializingException("Could not read field " + codec.name + " of " + clazz.getName(), ex);
+	    }
+	}
+	return clazz.cast(obj);
+    }
+
+    @Override
+    public void write(T obj, SerializationContext context) throws IOException {
+	for (FieldCodec codec : codecs) {
+	    try {
+		codec.write(obj, context);
+	    } catch (IOException | RuntimeException | Error ex) {
+		throw ex;
+	    } catch (Throwable ex) {
+		throw new SerializingException("Could not write field " + codec.name + " of " + clazz.getName(), ex);
+	    }
+	}
+    }
+
+    @Override
+    public String toString() {
+	return "GeneratedAdapter{" + clazz.getName() + ", " + codecs.length + " fields}";
+    }
+
+    private static MethodHandle constructor(Class<?> clazz) {
+	checkNotNull(clazz, "Class cannot be null");
+	if (clazz.isInterface() || Modifier.isAbstract(clazz.getModifiers())) {
+	    throw new IllegalArgumentException("Cannot generate adapter for abstract " + clazz);
+	}
+
+	try {
+	    Constructor<?> cons = clazz.getDeclaredConstructor();
+	    cons.setAccessible(true);
+	    return MethodHandles.lookup().unreflectConstructor(cons).asType(MethodType.methodType(Object.class));
+	} catch (NoSuchMethodException | IllegalAccessException ex) {
+	    throw new IllegalArgumentException(clazz + " has no accessible no-argument constructor", ex);
+	}
+    }
+
+    /**
+     * Creates a codec for every annotated field of a class and its
+     * superclasses, sorted by position.
+     */
+    private static List<FieldCodec> scan(Class<?> clazz) {
+	checkNotNull(clazz, "Class cannot be null");
+
+	List<FieldCodec> codecs = new ArrayList<>();
+	for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass()) {
+	    for (Field field : c.getDeclaredFields()) {
+		BinaryField annotation = field.getAnnotation(BinaryField.class);
+		if (annotation == null) {
+		    continue;
+		}
+		if (Modifier.isStatic(field.getModifiers())) {
+		    throw new IllegalArgumentException("Static field " + field + " cannot be a BinaryField");
+		}
+		codecs.add(FieldCodec.of(field, annotation));
+	    }
+	}
+
+	codecs.sort(Comparator.comparingInt(codec -> codec.position));
+	for (int i = 1; i < codecs.size(); ++i) {
+	    if (codecs.get(i).position == codecs.get(i - 1).position) {
+		throw new IllegalArgumentException("Fields " + codecs.get(i - 1).name + " and " + codecs.get(i).name
+			+ " of " + clazz.getName() + " have the same position: " + codecs.get(i).position);
+	    }
+	}
+	return codecs;
+    }
+
+    /**
+     * Reads and writes a single field. Getters and setters are adapted to
+     * take an {@code Object}, so that they can be invoked exactly.
+     */
+    private abstract static class FieldCodec {
+
+	static FieldCodec of(Field field, BinaryField annotation) {
+	    field.setAccessible(true);
+
+	    Class<?> type = field.getType();
+	    Class<?> stored = (type.isPrimitive()) ? type : Object.class;
+	    MethodHandle getter;
+	    MethodHandle setter;
+	    try {
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+		getter = lookup.unreflectGetter(field).asType(MethodType.methodType(stored, Object.class));
+		setter = lookup.unreflectSetter(field).asType(MethodType.methodType(void.class, Object.class, stored));
+	    } catch (IllegalAccessException ex) {
+		throw new IllegalArgumentException("Cannot access field " + field, ex);
+	    }
+
+	    String name = field.getDeclaringClass().getSimpleName() + '.' + field.getName();
+	    int position = annotation.value();
+	    int since = annotation.since();
+	    if (type == boolean.class) {
+		return new FieldCodec(name, position, since, getter, setter) {
+
+		    @Override
+		    void write(Object obj, SerializationContext context) throws Throwable {
+			context.writeBoolean((boolean) getter.invokeExact(obj));
+		    }
+
+		    @Override
+		    void read(Object obj, DeserializationContext context) throws Throwable {
+			setter.invokeExact(obj, context.readBoolean());
+		    }
+		};
+	    } else if (type == byte.class) {
+		return new FieldCodec(name, position, since, getter, setter) {
+
+		    @Override
+		    void write(Object obj, SerializationContext context) throws Throwable {
+			context.writeByte((byte) getter.invokeExact(obj));
+		    }
+
+		    @Override
+		    void read(Object obj, DeserializationContext context) throws Throwable {
+			setter.invokeExact(obj, context.readByte());
+		    }
+		};
+	    } else if (type == short.class) {
+		return new FieldCodec(name, position, since, getter, setter) {
+
+		    @Override
+		    void write(Object obj, SerializationContext context) throws Throwable {
+			context.writeShort((short) getter.invokeExact(obj));
+		    }
+
+		    @Override
+		    void read(Object obj, DeserializationContext context) throws Throwable {
+			setter.invokeExact(obj, context.readShort());
+		    }
+		};
+	    } else if (type == char.class) {
+		return new FieldCodec(name, position, since, getter, setter) {
+
+		    @Override
+		    void write(Object obj, SerializationContext context) throws Throwable {
+			context.writeChar((char) getter.invokeExact(obj));
+		    }
+
+		    @Override
+		    void read(Object obj, DeserializationContext context) throws Throwable {
+			setter.invokeExact(obj, context.readChar());
+		    }
+		};
+	    } else if (type == int.class) {
+		return new FieldCodec(name, position, since, getter, setter) {
+
+		    @Override
+		    void write(Object obj, SerializationContext context) throws Throwable {
+			context.writeInt((int) getter.invokeExact(obj));
+		    }
+
+		    @Override
+		    void read(Object obj, DeserializationContext context) throws Throwable {
+			setter.invokeExact(obj, context.readInt());
+		    }
+		};
+	    } else if (type == long.class) {
+		return new FieldCodec(name, position, since, getter, setter) {
+
+		    @Override
+		    void write(Object obj, SerializationContext context) throws Throwable {
+			context.writeLong((long) getter.invokeExact(obj));
+		    }
+
+		    @Override
+		    void read(Object obj, DeserializationContext context) throws Throwable {
+			setter.invokeExact(obj, context.readLong());
+		    }
+		};
+	    } else if (type == float.class) {
+		return new FieldCodec(name, position, since, getter, setter) {
+
+		    @Override
+		    void write(Object obj, SerializationContext context) throws Throwable {
+			context.writeFloat((float) getter.invokeExact(obj));
+		    }
+
+		    @Override
+		    void read(Object obj, DeserializationContext context) throws Throwable {
+			setter.invokeExact(obj, context.readFloat());
+		    }
+		};
+	    } else if (type == double.class) {
+		return new FieldCodec(name, position, since, getter, setter) {
+
+		    @Override
+		    void write(Object obj, SerializationContext context) throws Throwable {
+			context.writeDouble((double) getter.invokeExact(obj));
+		    }
+
+		    @Override
+		    void read(Object obj, DeserializationContext context) throws Throwable {
+			setter.invokeExact(obj, context.readDouble());
+		    }
+		};
+	    } else if (type == String.class) {
+		return new FieldCodec(name, position, since, getter, setter) {
+
+		    @Override
+		    void write(Object obj, SerializationContext context) throws Throwable {
+			context.writeString((String) (Object) getter.invokeExact(obj));
+		    }
+
+		    @Override
+		    void read(Object obj, DeserializationContext context) throws Throwable {
+			setter.invokeExact(obj, (Object) context.readString());
+		    }
+		};
+	    }
+	    return new ObjectCodec(name, position, since, getter, setter, type);
+	}
+
+	final String name;
+	final int position;
+	final int since;
+	final MethodHandle getter;
+	final MethodHandle setter;
+
+	FieldCodec(String name, int position, int since, MethodHandle getter, MethodHandle setter) {
+	    this.name = name;
+	    this.position = position;
+	    this.since = since;
+	    this.getter = getter;
+	    this.setter = setter;
+	}
+
+	abstract void write(Object obj, SerializationContext context) throws Throwable;
+
+	abstract void read(Object obj, DeserializationContext context) throws Throwable;
+    }
+
+    /**
+     * Codec of fields written with the adapter of their declared type.
+     */
+    private static final class ObjectCodec extends FieldCodec {
+
+	private final Class<Object> type;
+	private volatile Resolved<BinaryAdapter<Object>> readAdapter;
+	private volatile Resolved<BinaryAdapter<? super Object>> writeAdapter;
+
+	@SuppressWarnings("unchecked")
+	ObjectCodec(String name, int position, int since, MethodHandle getter, MethodHandle setter, Class<?> type) {
+	    super(name, position, since, getter, setter);
+	    this.type = (Class<Object>) type;
+	}
+
+	@Override
+	void write(Object obj, SerializationContext context) throws Throwable {
+	    Object value = (Object) getter.invokeExact(obj);
+	    if (!context.writeAndReturnBool(value != null)) {
+		return;
+	    }
+
+	    BinaryIO io = BinaryIO.get();
+	    Object snapshot = io.registrySnapshot();
+	    Resolved<BinaryAdapter<? super Object>> resolved = writeAdapter;
+	    if (resolved == null || resolved.snapshot != snapshot) {
+		BinaryAdapter<? super Object> adapter = io.getWriteAdapter(type);
+		if (adapter == null) {
+		    throw new SerializingException("Cannot write field " + name + ": no BinaryAdapter set for " + type);
+		}
+		writeAdapter = resolved = new Resolved<>(snapshot, adapter);
+	    }
+	    context.writeTracked(value, resolved.adapter);
+	}
+
+	@Override
+	void read(Object obj, DeserializationContext context) throws Throwable {
+	    if (!context.readBoolean()) {
+		setter.invokeExact(obj, (Object) null);
+		return;
+	    }
+
+	    BinaryIO io = BinaryIO.get();
+	    Object snapshot = io.registrySnapshot();
+	    Resolved<BinaryAdapter<Object>> resolved = readAdapter;
+	    if (resolved == null || resolved.snapshot != snapshot) {
+		BinaryAdapter<Object> adapter = io.getReadAdapter(type);
+		if (adapter == null) {
+		    throw new DeserializingException("Cannot read field " + name + ": no BinaryAdapter set for " + type);
+		}
+		readAdapter = resolved = new Resolved<>(snapshot, adapter);
+	    }
+	    setter.invokeExact(obj, context.readTracked(resolved.adapter));
+	}
+    }
+
+    /**
+     * An adapter along with the registry snapshot it was resolved from; stale
+     * once another adapter is registered.
+     */
+    private static final class Resolved<A> {
+
+	final Object snapshot;
+	final A adapter;
+
+	Resolved(Object snapshot, A adapter) {
+	    this.snapshot = snapshot;
+	    this.adapter = adapter;
+	}
+    }
+}
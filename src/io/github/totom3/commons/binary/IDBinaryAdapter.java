@@ -6,10 +6,20 @@ import com.google.common.collect.HashBiMap;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 
 /**
+ * Writes objects of several classes, each preceded by the ID of its adapter.
+ * <p>
+ * If framing is enabled (see {@link Builder#withFraming(boolean)}), every
+ * object is also written as a length-prefixed section, with its own reference
+ * tables. An object whose ID is unknown can then be skipped without reading
+ * the rest of the stream, and the stream can be scanned with
+ * {@link #skip(DeserializationContext)}. Both sides must agree on whether
+ * framing is used.
  *
  * @author Totom3
  * @param <T>
@@ -24,26 +34,51 @@ public class IDBinaryAdapter<T> implements BinaryAdapter<T> {
     private final BinaryAdapter<T> fallbackAdapter;
     private final BiMap<Integer, BinaryAdapter<? extends T>> adapters;
     private final Map<Class<? extends T>, BinaryAdapter<? extends T>> adaptersByClass;
+    private final boolean framed;
+    private final boolean skipFailures;
 
-    private IDBinaryAdapter(TokenType type, BinaryAdapter<T> fallback, BiMap<Integer, BinaryAdapter<? extends T>> adapters, Map<Class<? extends T>, BinaryAdapter<? extends T>> adaptersByClass) {
+    private IDBinaryAdapter(TokenType type, BinaryAdapter<T> fallback, BiMap<Integer, BinaryAdapter<? extends T>> adapters, Map<Class<? extends T>, BinaryAdapter<? extends T>> adaptersByClass, boolean framed, boolean skipFailures) {
 	this.token = type;
 	this.fallbackAdapter = fallback;
 	this.adapters = HashBiMap.create(adapters);
 	this.adaptersByClass = new HashMap<>(adaptersByClass);
+	this.framed = framed;
+	this.skipFailures = skipFailures;
+    }
+
+    public boolean isFramed() {
+	return framed;
     }
 
     // Read by ID
     @Override
     public T read(DeserializationContext context) throws IOException {
-	int readID = token.read(context.in());
-	BinaryAdapter<? extends T> adapter = adapters.get(readID);
+	int id = readToken(context);
+	if (!framed) {
+	    return getAdapter(id).read(context);
+	}
+
+	BinaryAdapter<? extends T> adapter = adapters.get(id);
 	if (adapter == null) {
-	    if ((adapter = fallbackAdapter) == null) {
-		throw new DeserializingException("Missing BinaryAdapter for ID " + readID);
-	    }
+	    adapter = fallbackAdapter;
 	}
+	return Frames.read(adapter, skipFailures, "object with ID " + id, context);
+    }
 
-	return adapter.read(context);
+    /**
+     * Skips a framed object without decoding it.
+     *
+     * @param context the context to read from.
+     *
+     * @throws IOException           if an I/O error occurs.
+     * @throws IllegalStateException if framing is not enabled.
+     */
+    public void skip(DeserializationContext context) throws IOException {
+	if (!framed) {
+	    throw new IllegalStateException("Only framed objects can be skipped");
+	}
+	readToken(context);
+	context.readSection();
     }
 
     // Write by class
@@ -62,9 +97,127 @@ public class IDBinaryAdapter<T> implements BinaryAdapter<T> {
 	} else {
 	    id = adapters.inverse().get(adapter);
 	}
-	token.write(context.out(), id);
+	writeToken(id, context);
+
+	if (framed) {
+	    context.writeSection(obj, adapter);
+	} else {
+	    adapter.write(obj, context);
+	}
+    }
+
+    /**
+     * Writes the elements of a collection, without their count. If every
+     * element has the same class, the token of that class is written only
+     * once, followed by the raw elements; otherwise every element is written
+     * with its own token, as by {@link #write(Object, SerializationContext)}.
+     * Framed objects are always written with their own token.
+     *
+     * @param coll    the elements to write.
+     * @param context the context to write to.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    public void writeElements(Collection<? extends T> coll, SerializationContext context) throws IOException {
+	if (coll.isEmpty()) {
+	    return;
+	}
+
+	Class<?> clazz = (framed) ? null : commonClass(coll);
+	context.writeBoolean(clazz != null);
+	if (clazz == null) {
+	    for (T obj : coll) {
+		context.writeTracked(obj, this);
+	    }
+	    return;
+	}
+
+	BinaryAdapter<T> adapter = (BinaryAdapter<T>) adaptersByClass.get(clazz);
+	int id;
+	if (adapter == null) {
+	    if (fallbackAdapter == null) {
+		throw new SerializingException("Missing BinaryAdapter for class " + clazz);
+	    }
+	    adapter = fallbackAdapter;
+	    id = -1;
+	} else {
+	    id = adapters.inverse().get(adapter);
+	}
+	writeToken(id, context);
+
+	for (T obj : coll) {
+	    context.writeTracked(obj, adapter);
+	}
+    }
+
+    /**
+     * Reads elements written by
+     * {@link #writeElements(Collection, SerializationContext)} into a
+     * collection.
+     *
+     * @param coll    the collection to add the elements to.
+     * @param count   the number of elements to read.
+     * @param context the context to read from.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    public void readElements(Collection<? super T> coll, int count, DeserializationContext context) throws IOException {
+	if (count <= 0) {
+	    return;
+	}
 
-	adapter.write(obj, context);
+	if (!context.readBoolean()) {
+	    for (int i = 0; i < count; ++i) {
+		coll.add(context.readTracked(this));
+	    }
+	    return;
+	}
+
+	BinaryAdapter<? extends T> adapter = getAdapter(readToken(context));
+	for (int i = 0; i < count; ++i) {
+	    coll.add(context.readTracked(adapter));
+	}
+    }
+
+    private static Class<?> commonClass(Collection<?> coll) {
+	Iterator<?> it = coll.iterator();
+	Object first = it.next();
+	if (first == null) {
+	    return null;
+	}
+
+	Class<?> clazz = first.getClass();
+	while (it.hasNext()) {
+	    Object obj = it.next();
+	    if (obj == null || obj.getClass() != clazz) {
+		return null;
+	    }
+	}
+	return clazz;
+    }
+
+    private BinaryAdapter<? extends T> getAdapter(int id) throws DeserializingException {
+	BinaryAdapter<? extends T> adapter = adapters.get(id);
+	if (adapter == null) {
+	    if ((adapter = fallbackAdapter) == null) {
+		throw new DeserializingException("Missing BinaryAdapter for ID " + id);
+	    }
+	}
+	return adapter;
+    }
+
+    private int readToken(DeserializationContext context) throws IOException {
+	return (context.isEnabled(BinaryFeature.VARINTS))
+		? context.readSignedVarInt()
+		: token.read(context.in());
+    }
+
+    private void writeToken(int id, SerializationContext context) throws IOException {
+	if (context.isEnabled(BinaryFeature.VARINTS)) {
+	    context.writeSignedVarInt(id);
+	} else {
+	    token.write(context.out(), id);
+	}
     }
 
     public static enum TokenType {
@@ -106,6 +259,24 @@ public class IDBinaryAdapter<T> implements BinaryAdapter<T> {
 		    void write(DataOutput out, int i) throws IOException {
 			out.writeInt(i);
 		    }
+		},
+
+	/**
+	 * ZigZag-encoded variable-length integer. Note that every token is
+	 * written that way, regardless of the token type, when
+	 * {@link BinaryFeature#VARINTS} is enabled.
+	 */
+	VARINT {
+
+		    @Override
+		    int read(DataInput in) throws IOException {
+			return VarInts.readSignedVarInt(in);
+		    }
+
+		    @Override
+		    void write(DataOutput out, int i) throws IOException {
+			VarInts.writeSignedVarInt(out, i);
+		    }
 		};
 
 	abstract int read(DataInput in) throws IOException;
@@ -119,6 +290,8 @@ public class IDBinaryAdapter<T> implements BinaryAdapter<T> {
 	private BinaryAdapter<E> fallback;
 	private final BiMap<Integer, BinaryAdapter<? extends E>> adapters = HashBiMap.create();
 	private final Map<Class<? extends E>, BinaryAdapter<? extends E>> adaptersByClass = new HashMap<>();
+	private boolean framed;
+	private boolean skipFailures;
 
 	private Builder() {
 	}
@@ -150,8 +323,23 @@ public class IDBinaryAdapter<T> implements BinaryAdapter<T> {
 	    return this;
 	}
 
+	/**
+	 * Enables framing: every object is written as a length-prefixed section.
+	 *
+	 * @param skipFailures whether objects with an unknown ID, or which fail
+	 *                     to decode, are read as {@code null} instead of
+	 *                     failing the read.
+	 *
+	 * @return this builder.
+	 */
+	public Builder<E> withFraming(boolean skipFailures) {
+	    this.framed = true;
+	    this.skipFailures = skipFailures;
+	    return this;
+	}
+
 	public IDBinaryAdapter<E> build() {
-	    return new IDBinaryAdapter<>(token, fallback, adapters, adaptersByClass);
+	    return new IDBinaryAdapter<>(token, fallback, adapters, adaptersByClass, framed, skipFailures);
 	}
     }
 }
@@ -1,7 +1,6 @@
 package io.github.totom3.commons.binary;
 
 import java.io.IOException;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 import org.bukkit.Bukkit;
@@ -9,11 +8,20 @@ import org.bukkit.inventory.Inventory;
 import org.bukkit.inventory.ItemStack;
 
 /**
+ * Writes the title and size of an inventory, followed by a bitmap of its
+ * occupied slots and the items of those slots, in order. Inventories written
+ * in the older format, as a map of slot indexes to items, can still be read.
  *
  * @author Totom3
  */
 public class InventoryAdapter implements BinaryAdapter<Inventory> {
 
+    /**
+     * Written in place of the size to tell the slot bitmap format from the
+     * older map format, in which the size is always positive.
+     */
+    private static final int DENSE_FORMAT = -1;
+
     @Override
     public Inventory read(DeserializationContext context) throws IOException {
 	// Read title
@@ -22,11 +30,12 @@ public class InventoryAdapter implements BinaryAdapter<Inventory> {
 	// Read size
 	int size = context.readByte();
 
-	// Read elements
-	Map<Integer, ItemStack> map = context.readMap(Integer.class, ItemStack.class);
-	ItemStack[] stacks = new ItemStack[size];
-	for (Entry<Integer, ItemStack> entry : map.entrySet()) {
-	    stacks[entry.getKey()] = entry.getValue();
+	ItemStack[] stacks;
+	if (size == DENSE_FORMAT) {
+	    size = context.readUnsignedByte();
+	    stacks = readSlots(size, context);
+	} else {
+	    stacks = readMap(size, context);
 	}
 
 	Inventory inv = Bukkit.createInventory(null, size, title);
@@ -34,26 +43,62 @@ public class InventoryAdapter implements BinaryAdapter<Inventory> {
 	return inv;
     }
 
+    private ItemStack[] readSlots(int size, DeserializationContext context) throws IOException {
+	// Read occupied slots
+	byte[] bitmap = new byte[(size + 7) >>> 3];
+	context.in().readFully(bitmap);
+
+	// Read items
+	ItemStack[] stacks = new ItemStack[size];
+	for (int i = 0; i < size; ++i) {
+	    if ((bitmap[i >>> 3] & (1 << (i & 7))) != 0) {
+		stacks[i] = context.readObject(ItemStack.class);
+	    }
+	}
+	return stacks;
+    }
+
+    private ItemStack[] readMap(int size, DeserializationContext context) throws IOException {
+	if (size < 0) {
+	    throw new DeserializingException("Read invalid inventory size: " + size);
+	}
+
+	Map<Integer, ItemStack> map = context.readMap(Integer.class, ItemStack.class);
+	ItemStack[] stacks = new ItemStack[size];
+	for (Entry<Integer, ItemStack> entry : map.entrySet()) {
+	    stacks[entry.getKey()] = entry.getValue();
+	}
+	return stacks;
+    }
+
     @Override
     public void write(Inventory inv, SerializationContext context) throws IOException {
 	// Write title
 	context.writeString(inv.getTitle());
 
 	ItemStack[] contents = inv.getContents();
+	if (contents.length > 0xFF) {
+	    throw new SerializingException("Cannot write inventory of " + contents.length + " slots; at most 255 are supported");
+	}
 
 	// Write size
+	context.writeByte(DENSE_FORMAT);
 	context.writeByte(contents.length);
 
-	// Build items map
-	Map<Integer, ItemStack> map = new HashMap<>();
+	// Write occupied slots
+	byte[] bitmap = new byte[(contents.length + 7) >>> 3];
 	for (int i = 0; i < contents.length; ++i) {
-	    ItemStack item = contents[i];
-	    if (item != null) {
-		map.put(i, item);
+	    if (contents[i] != null) {
+		bitmap[i >>> 3] |= 1 << (i & 7);
 	    }
 	}
+	context.out().write(bitmap);
 
 	// Write items
-	context.writeMap(map);
+	for (ItemStack item : contents) {
+	    if (item != null) {
+		context.writeObject(item);
+	    }
+	}
     }
 }
@@ -1,13 +1,15 @@
 package io.github.totom3.commons.binary;
 
-import java.io.DataInputStream;
 import java.io.IOException;
 import net.minecraft.server.v1_8_R3.NBTCompressedStreamTools;
+import net.minecraft.server.v1_8_R3.NBTReadLimiter;
 import net.minecraft.server.v1_8_R3.NBTTagCompound;
 import org.bukkit.craftbukkit.v1_8_R3.inventory.CraftItemStack;
 import org.bukkit.inventory.ItemStack;
 
 /**
+ * Writes items as uncompressed NBT. Compress the whole stream instead, if
+ * needed (see {@link BinaryCompression}).
  *
  * @author Totom3
  */
@@ -19,7 +21,7 @@ public class ItemStackAdapter implements BinaryAdapter<ItemStack> {
 	    return null;
 	}
 
-	NBTTagCompound nbt = NBTCompressedStreamTools.a((DataInputStream) context.in());
+	NBTTagCompound nbt = NBTCompressedStreamTools.a(context.in(), NBTReadLimiter.a);
 	net.minecraft.server.v1_8_R3.ItemStack nms = net.minecraft.server.v1_8_R3.ItemStack.createStack(nbt);
 	return CraftItemStack.asCraftMirror(nms);
     }
@@ -31,7 +33,7 @@ public class ItemStackAdapter implements BinaryAdapter<ItemStack> {
 	if (context.writeAndReturnBool(stack == null)) {
 	    return;
 	}
-	
+
 	NBTTagCompound nbt = stack.save(new NBTTagCompound());
 	NBTCompressedStreamTools.a(nbt, context.out());
     }
@@ -0,0 +1,93 @@
+package io.github.totom3.commons.binary;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A value which is only decoded when first accessed. Lazy values are written
+ * with {@link SerializationContext#writeLazy(Object)} as a length-prefixed
+ * section, which {@link DeserializationContext#readLazy(Class)} skips over,
+ * keeping the encoded bytes around until {@link #get()} is called.
+ * <p>
+ * A section is encoded with the features of the context it is written to, but
+ * with its own string and object reference tables: objects inside a lazy value
+ * cannot refer to objects outside of it, and conversely. A lazy value which
+ * was never decoded is written back as is, without being decoded.
+ *
+ * @author Totom3
+ * @param <T> the type of the value.
+ */
+public final class Lazy<T> {
+
+    /**
+     * Creates an already decoded lazy value, for instance to replace a value
+     * read from a stream.
+     *
+     * @param <T>   the type of the value.
+     * @param value the value; may be {@code null}.
+     *
+     * @return a lazy value holding {@code value}.
+     */
+    public static <T> Lazy<T> of(T value) {
+	return new Lazy<>(value);
+    }
+
+    private final BinaryAdapter<T> adapter;
+    private final int features;
+    private ByteBuffer section;
+    private T value;
+
+    Lazy(ByteBuffer section, int features, BinaryAdapter<T> adapter) {
+	this.section = section;
+	this.features = features;
+	this.adapter = adapter;
+    }
+
+    private Lazy(T value) {
+	this.value = value;
+	this.features = 0;
+	this.adapter = null;
+    }
+
+    /**
+     * Returns the value, decoding it first if it was not yet. The encoded
+     * bytes are released once decoded.
+     *
+     * @return the value.
+     *
+     * @throws IOException if the value cannot be decoded. Decoding is tried
+     *                     again on the next call.
+     */
+    public synchronized T get() throws IOException {
+	if (section != null) {
+	    value = DeserializationContext.readSection(section.duplicate().order(section.order()), features, adapter);
+	    section = null;
+	}
+	return value;
+    }
+
+    public synchronized boolean isDecoded() {
+	return section == null;
+    }
+
+    /**
+     * Returns the encoded bytes of this value, if it was never decoded and was
+     * encoded with the specified features and byte order.
+     *
+     * @return a duplicate of the encoded section, or {@code null}.
+     */
+    synchronized ByteBuffer encoded(int features, ByteOrder order) {
+	if (section == null || this.features != features || section.order() != order) {
+	    return null;
+	}
+	return section.duplicate().order(order);
+    }
+
+    @Override
+    public synchronized String toString() {
+	return (section == null)
+		? "Lazy{" + value + '}'
+		: "Lazy{" + section.remaining() + " bytes}";
+    }
+}
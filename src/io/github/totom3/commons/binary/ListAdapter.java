@@ -12,7 +12,7 @@ public abstract class ListAdapter<T> implements BinaryAdapter<List<T>> {
 
     @Override
     public List<T> read(DeserializationContext context) throws IOException {
-	int length = context.readInt();
+	int length = context.readLength();
 
 	List<T> list = supply(length);
 
@@ -26,7 +26,7 @@ public abstract class ListAdapter<T> implements BinaryAdapter<List<T>> {
     @Override
     public void write(List<T> list, SerializationContext context) throws IOException {
 	// Write list length
-	context.writeInt(list.size());
+	context.writeLength(list.size());
 
 	// Write elements
 	for (T elem : list) {
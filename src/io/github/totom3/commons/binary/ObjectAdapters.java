@@ -1,12 +1,13 @@
 package io.github.totom3.commons.binary;
 
+import com.google.common.collect.Sets;
 import io.github.totom3.commons.bukkit.AbstractLocation;
 import io.github.totom3.commons.bukkit.AbstractRegion;
 import io.github.totom3.commons.bukkit.Region;
 import io.github.totom3.commons.chat.ChatComponent;
 import io.github.totom3.commons.chat.ChatComponentAdapter;
 import java.io.IOException;
-import java.util.HashSet;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -48,6 +49,15 @@ public class ObjectAdapters {
 		.addAdapter(17, AbstractRegion.class, new AbstractRegionAdapter())
 		.addAdapter(18, ChatComponent.class, new ChatComponentAdapter())
 		.addAdapter(19, Enchantment.class, new EnchantmentAdapter())
+		// Primitive arrays adapters
+		.addAdapter(20, byte[].class, new ByteArrayAdapter())
+		.addAdapter(21, short[].class, new ShortArrayAdapter())
+		.addAdapter(22, char[].class, new CharArrayAdapter())
+		.addAdapter(23, int[].class, new IntArrayAdapter())
+		.addAdapter(24, long[].class, new LongArrayAdapter())
+		.addAdapter(25, float[].class, new FloatArrayAdapter())
+		.addAdapter(26, double[].class, new DoubleArrayAdapter())
+		.addAdapter(27, boolean[].class, new BooleanArrayAdapter())
 		.build();
     }
 
@@ -170,16 +180,31 @@ public class ObjectAdapters {
 	}
     }
 
+    /**
+     * Writes lists with {@link IDBinaryAdapter#writeElements}, so that lists
+     * holding a single type of element only carry one type token.
+     */
     static class ListAdapter implements BinaryAdapter<List> {
 
 	@Override
 	public List read(DeserializationContext context) throws IOException {
-	    return context.readList(Object.class);
+	    int length = context.readLength();
+	    if (length == -1) {
+		return null;
+	    }
+	    if (length < 0) {
+		throw new DeserializingException("List length cannot be negative");
+	    }
+
+	    List list = new ArrayList<>(BinaryIO.initialCapacity(length));
+	    adapter.readElements(list, length, context);
+	    return list;
 	}
 
 	@Override
 	public void write(List obj, SerializationContext context) throws IOException {
-	    context.writeCollection(obj);
+	    context.writeLength(obj.size());
+	    adapter.writeElements(obj, context);
 	}
 
     }
@@ -188,12 +213,23 @@ public class ObjectAdapters {
 
 	@Override
 	public Set read(DeserializationContext context) throws IOException {
-	    return new HashSet<>(context.readList(Object.class));
+	    int length = context.readLength();
+	    if (length == -1) {
+		return null;
+	    }
+	    if (length < 0) {
+		throw new DeserializingException("Set length cannot be negative");
+	    }
+
+	    Set set = Sets.newHashSetWithExpectedSize(BinaryIO.initialCapacity(length));
+	    adapter.readElements(set, length, context);
+	    return set;
 	}
 
 	@Override
 	public void write(Set obj, SerializationContext context) throws IOException {
-	    context.writeCollection(obj);
+	    context.writeLength(obj.size());
+	    adapter.writeElements(obj, context);
 	}
 
     }
@@ -238,4 +274,107 @@ public class ObjectAdapters {
 	}
     }
 
+    static class ByteArrayAdapter implements BinaryAdapter<byte[]> {
+
+	@Override
+	public byte[] read(DeserializationContext context) throws IOException {
+	    return context.readByteArray();
+	}
+
+	@Override
+	public void write(byte[] obj, SerializationContext context) throws IOException {
+	    context.writeByteArray(obj);
+	}
+    }
+
+    static class BooleanArrayAdapter implements BinaryAdapter<boolean[]> {
+
+	@Override
+	public boolean[] read(DeserializationContext context) throws IOException {
+	    return context.readBooleanArray();
+	}
+
+	@Override
+	public void write(boolean[] obj, SerializationContext context) throws IOException {
+	    context.writeBooleanArray(obj);
+	}
+    }
+
+    static class ShortArrayAdapter implements BinaryAdapter<short[]> {
+
+	@Override
+	public short[] read(DeserializationContext context) throws IOException {
+	    return context.readShortArray();
+	}
+
+	@Override
+	public void write(short[] obj, SerializationContext context) throws IOException {
+	    context.writeShortArray(obj);
+	}
+    }
+
+    static class CharArrayAdapter implements BinaryAdapter<char[]> {
+
+	@Override
+	public char[] read(DeserializationContext context) throws IOException {
+	    return context.readCharArray();
+	}
+
+	@Override
+	public void write(char[] obj, SerializationContext context) throws IOException {
+	    context.writeCharArray(obj);
+	}
+    }
+
+    static class IntArrayAdapter implements BinaryAdapter<int[]> {
+
+	@Override
+	public int[] read(DeserializationContext context) throws IOException {
+	    return context.readIntArray();
+	}
+
+	@Override
+	public void write(int[] obj, SerializationContext context) throws IOException {
+	    context.writeIntArray(obj);
+	}
+    }
+
+    static class LongArrayAdapter implements BinaryAdapter<long[]> {
+
+	@Override
+	public long[] read(DeserializationContext context) throws IOException {
+	    return context.readLongArray();
+	}
+
+	@Override
+	public void write(long[] obj, SerializationContext context) throws IOException {
+	    context.writeLongArray(obj);
+	}
+    }
+
+    static class FloatArrayAdapter implements BinaryAdapter<float[]> {
+
+	@Override
+	public float[] read(DeserializationContext context) throws IOException {
+	    return context.readFloatArray();
+	}
+
+	@Override
+	public void write(float[] obj, SerializationContext context) throws IOException {
+	    context.writeFloatArray(obj);
+	}
+    }
+
+    static class DoubleArrayAdapter implements BinaryAdapter<double[]> {
+
+	@Override
+	public double[] read(DeserializationContext context) throws IOException {
+	    return context.readDoubleArray();
+	}
+
+	@Override
+	public void write(double[] obj, SerializationContext context) throws IOException {
+	    context.writeDoubleArray(obj);
+	}
+    }
 }
@@ -3,9 +3,13 @@ package io.github.totom3.commons.binary;
 import com.google.common.base.Preconditions;
 import java.io.DataOutput;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
+import java.util.Set;
 
 /**
  *
@@ -13,18 +17,78 @@ import java.util.Map;
  */
 public class SerializationContext extends BinaryDataBank {
 
+    /**
+     * Magic number starting a header written by {@link #writeHeader()}.
+     */
+    static final int HEADER_MAGIC = 0x54334246;
+
+    /**
+     * Maximum number of strings remembered when
+     * {@link BinaryFeature#STRING_REFERENCES} is enabled.
+     */
+    static final int MAX_STRING_REFERENCES = 4096;
+
     private final BinaryIO binaryIO;
     private final DataOutput out;
+    private final StringCodec strings;
+    private ArrayCodec arrays;
+    private Map<String, Integer> stringReferences;
+    private Map<Object, Integer> objectReferences;
+    private int features;
 
     public SerializationContext(DataOutput out) {
 	this.binaryIO = BinaryIO.get();
 	this.out = Preconditions.checkNotNull(out);
+	this.strings = new StringCodec();
     }
 
     public DataOutput out() {
 	return out;
     }
 
+    public boolean isEnabled(BinaryFeature feature) {
+	return (features & feature.mask()) != 0;
+    }
+
+    /**
+     * Enables or disables a feature for everything written from now on. The
+     * reading side must use the same features at the same point of the
+     * stream.
+     *
+     * @param feature the feature to enable or disable.
+     * @param enabled whether to enable the feature.
+     */
+    public void setEnabled(BinaryFeature feature, boolean enabled) {
+	if (enabled) {
+	    features |= feature.mask();
+	} else {
+	    features &= ~feature.mask();
+	}
+    }
+
+    public Set<BinaryFeature> getFeatures() {
+	return BinaryFeature.fromMask(features);
+    }
+
+    int featureMask() {
+	return features;
+    }
+
+    void setFeatureMask(int features) {
+	this.features = features;
+    }
+
+    /**
+     * Writes a header recording the features currently enabled in this
+     * context, to be read back by {@link DeserializationContext#readHeader()}.
+     * <p>
+     * @throws IOException if an I/O error occurs.
+     */
+    public void writeHeader() throws IOException {
+	writeInt(HEADER_MAGIC);
+	writeByte(features);
+    }
+
     public <E extends Enum<E>> void writeEnum(E e) throws IOException {
 	binaryIO.writeEnum(e, this);
     }
@@ -41,24 +105,158 @@ public class SerializationContext extends BinaryDataBank {
 	binaryIO.writeCollection(coll, this);
     }
 
+    /**
+     * Writes a collection whose elements are all instances of
+     * {@code elementType}, resolving its adapter only once. The collection can
+     * be read back with {@link DeserializationContext#readList(Class)} or
+     * {@link DeserializationContext#readSet(Class)}.
+     *
+     * @param <T>         the type of the elements.
+     * @param coll        the collection to write; may be {@code null}.
+     * @param elementType the type whose adapter is used for every element.
+     *
+     * @throws IOException if an I/O error occurs, or if an element is not an
+     *                     instance of {@code elementType}.
+     */
+    public <T> void writeCollection(Collection<? extends T> coll, Class<T> elementType) throws IOException {
+	binaryIO.writeCollection(coll, elementType, this);
+    }
+
     public <K, V> void writeMap(Map<? extends K, ? extends V> map) throws IOException {
 	binaryIO.writeMap(map, this);
     }
 
     public void writeString(String str) throws IOException {
+	if (isEnabled(BinaryFeature.STRING_REFERENCES)) {
+	    writeStringOrReference(str);
+	    return;
+	}
+
 	if (str == null) {
-	    out.writeInt(-1);
+	    writeLength(-1);
 	    return;
 	}
 
 	if (str.isEmpty()) {
-	    out.writeInt(0);
+	    writeLength(0);
 	    return;
 	}
 
-	byte[] ba = str.getBytes(StandardCharsets.UTF_8);
-	out.writeInt(ba.length);
-	out.write(ba);
+	int length = StringCodec.encodedLength(str);
+	writeLength(length);
+	strings.write(out, str, length);
+    }
+
+    /**
+     * Writes an object using the provided adapter. If
+     * {@link BinaryFeature#OBJECT_REFERENCES} is enabled, the object is
+     * preceded by a handle: {@code 0} if it is written in full, or
+     * {@code 1 + index} for a reference to the object at {@code index} in the
+     * table. Objects are given their index <em>before</em> being written, so
+     * that cycles end with a reference.
+     */
+    <T> void writeTracked(T obj, BinaryAdapter<? super T> adapter) throws IOException {
+	if (isEnabled(BinaryFeature.OBJECT_REFERENCES)) {
+	    if (objectReferences == null) {
+		objectReferences = new IdentityHashMap<>();
+	    }
+
+	    Integer index = objectReferences.get(obj);
+	    if (index != null) {
+		writeHandle(index + 1);
+		return;
+	    }
+
+	    objectReferences.put(obj, objectReferences.size());
+	    writeHandle(0);
+	}
+
+	adapter.write(obj, this);
+    }
+
+    private void writeHandle(int handle) throws IOException {
+	if (isEnabled(BinaryFeature.VARINTS)) {
+	    writeVarInt(handle);
+	} else {
+	    writeInt(handle);
+	}
+    }
+
+    /**
+     * Writes a string in {@link BinaryFeature#STRING_REFERENCES} mode. A
+     * signed tag comes first: {@code -1} for {@code null}, {@code 0} for the
+     * empty string, the length of the encoded string if it follows, or
+     * {@code -2 - index} for a reference to the string at {@code index} in the
+     * table.
+     */
+    private void writeStringOrReference(String str) throws IOException {
+	if (str == null || str.isEmpty()) {
+	    writeReferenceTag((str == null) ? -1 : 0);
+	    return;
+	}
+
+	if (stringReferences == null) {
+	    stringReferences = new HashMap<>();
+	}
+
+	Integer index = stringReferences.get(str);
+	if (index != null) {
+	    writeReferenceTag(-2 - index);
+	    return;
+	}
+
+	if (stringReferences.size() < MAX_STRING_REFERENCES) {
+	    stringReferences.put(str, stringReferences.size());
+	}
+
+	int length = StringCodec.encodedLength(str);
+	writeReferenceTag(length);
+	strings.write(out, str, length);
+    }
+
+    private void writeReferenceTag(int tag) throws IOException {
+	if (isEnabled(BinaryFeature.VARINTS)) {
+	    writeSignedVarInt(tag);
+	} else {
+	    writeInt(tag);
+	}
+    }
+
+    /**
+     * Writes the length of a string, array or collection; {@code -1} being
+     * used for {@code null}. The length is written as an {@code int}, or as a
+     * variable-length integer if {@link BinaryFeature#VARINTS} is enabled.
+     *
+     * @param length the length to write.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    public void writeLength(int length) throws IOException {
+	if (length < -1) {
+	    throw new IllegalArgumentException("Invalid length: " + length);
+	}
+
+	if (isEnabled(BinaryFeature.VARINTS)) {
+	    writeVarInt(length + 1);
+	} else {
+	    writeInt(length);
+	}
+    }
+
+    public void writeVarInt(int v) throws IOException {
+	VarInts.writeVarInt(out(), v);
+    }
+
+    public void writeVarLong(long v) throws IOException {
+	VarInts.writeVarLong(out(), v);
+    }
+
+    public void writeSignedVarInt(int v) throws IOException {
+	VarInts.writeSignedVarInt(out(), v);
+    }
+
+    public void writeSignedVarLong(long v) throws IOException {
+	VarInts.writeSignedVarLong(out(), v);
     }
 
     public void writeBoolean(boolean bool) throws IOException {
@@ -70,6 +268,187 @@ public class SerializationContext extends BinaryDataBank {
 	return bool;
     }
     
+    // ---------------[ Lazy Sections ]---------------
+    /**
+     * Writes an object as a section which can be skipped when reading, and
+     * decoded later on, by {@link DeserializationContext#readLazy(Class)}.
+     *
+     * @param obj the object to write; may be {@code null}.
+     *
+     * @throws IOException if an I/O error occurs, or if the object cannot be
+     *                     serialized.
+     */
+    public void writeLazy(Object obj) throws IOException {
+	if (obj == null) {
+	    writeInt(-1);
+	    return;
+	}
+
+	BinaryAdapter<Object> adapter = (BinaryAdapter<Object>) binaryIO.getWriteAdapter(obj.getClass());
+	if (adapter == null) {
+	    throw new SerializingException("Cannot write object " + obj + ": no BinaryAdapter set for " + obj.getClass());
+	}
+	writeSection(obj, adapter);
+    }
+
+    /**
+     * Writes a lazy value. If it was never decoded, and was read with the
+     * same features and byte order as this context, its encoded bytes are
+     * copied as is; otherwise, its value is written as by
+     * {@link #writeLazy(Object)}.
+     *
+     * @param lazy the lazy value to write; may be {@code null}.
+     *
+     * @throws IOException if an I/O error occurs, or if the value cannot be
+     *                     decoded or serialized.
+     */
+    public void writeLazy(Lazy<?> lazy) throws IOException {
+	if (lazy == null) {
+	    writeInt(-1);
+	    return;
+	}
+
+	ByteBuffer encoded = lazy.encoded(features, sectionOrder());
+	if (encoded == null) {
+	    writeLazy(lazy.get());
+	    return;
+	}
+
+	writeInt(encoded.remaining());
+	if (out instanceof ByteBufferOutput) {
+	    ((ByteBufferOutput) out).write(encoded);
+	} else {
+	    byte[] bytes = new byte[encoded.remaining()];
+	    encoded.get(bytes);
+	    out.write(bytes);
+	}
+    }
+
+    /**
+     * Writes an object as a section: its length in bytes, as a fixed-width
+     * integer, followed by the object, written with the features of this
+     * context but with fresh reference tables. Buffer-backed contexts write
+     * the section in place; others write it to a temporary buffer first.
+     */
+    <T> void writeSection(T obj, BinaryAdapter<? super T> adapter) throws IOException {
+	if (out instanceof ByteBufferOutput) {
+	    ByteBufferOutput bufOut = (ByteBufferOutput) out;
+	    int lengthPosition = bufOut.position();
+	    bufOut.writeInt(0);
+
+	    SerializationContext section = new BufferSerializationContext(bufOut);
+	    section.features = features;
+	    section.writeTracked(obj, adapter);
+
+	    int length = bufOut.position() - lengthPosition - 4;
+	    bufOut.buffer().putInt(lengthPosition, length);
+	    return;
+	}
+
+	ByteBufferOutput temp = new ByteBufferOutput();
+	SerializationContext section = new BufferSerializationContext(temp);
+	section.features = features;
+	section.writeTracked(obj, adapter);
+
+	ByteBuffer bytes = temp.toReadableBuffer();
+	writeInt(bytes.remaining());
+	out.write(bytes.array(), bytes.arrayOffset(), bytes.remaining());
+    }
+
+    private ByteOrder sectionOrder() {
+	return (out instanceof ByteBufferOutput)
+		? ((ByteBufferOutput) out).order()
+		: ByteOrder.BIG_ENDIAN;
+    }
+
+    // ---------------[ Primitive Arrays ]---------------
+    public void writeByteArray(byte[] arr) throws IOException {
+	if (arr == null) {
+	    writeLength(-1);
+	    return;
+	}
+
+	writeLength(arr.length);
+	out.write(arr);
+    }
+
+    public void writeBooleanArray(boolean[] arr) throws IOException {
+	if (arr == null) {
+	    writeLength(-1);
+	    return;
+	}
+
+	writeLength(arr.length);
+	arrays().writeBooleans(out, arr);
+    }
+
+    public void writeShortArray(short[] arr) throws IOException {
+	if (arr == null) {
+	    writeLength(-1);
+	    return;
+	}
+
+	writeLength(arr.length);
+	arrays().writeShorts(out, arr);
+    }
+
+    public void writeCharArray(char[] arr) throws IOException {
+	if (arr == null) {
+	    writeLength(-1);
+	    return;
+	}
+
+	writeLength(arr.length);
+	arrays().writeChars(out, arr);
+    }
+
+    public void writeIntArray(int[] arr) throws IOException {
+	if (arr == null) {
+	    writeLength(-1);
+	    return;
+	}
+
+	writeLength(arr.length);
+	arrays().writeInts(out, arr);
+    }
+
+    public void writeLongArray(long[] arr) throws IOException {
+	if (arr == null) {
+	    writeLength(-1);
+	    return;
+	}
+
+	writeLength(arr.length);
+	arrays().writeLongs(out, arr);
+    }
+
+    public void writeFloatArray(float[] arr) throws IOException {
+	if (arr == null) {
+	    writeLength(-1);
+	    return;
+	}
+
+	writeLength(arr.length);
+	arrays().writeFloats(out, arr);
+    }
+
+    public void writeDoubleArray(double[] arr) throws IOException {
+	if (arr == null) {
+	    writeLength(-1);
+	    return;
+	}
+
+	writeLength(arr.length);
+	arrays().writeDoubles(out, arr);
+    }
+
+    private ArrayCodec arrays() {
+	if (arrays == null) {
+	    arrays = new ArrayCodec();
+	}
+	return arrays;
+    }
+
     // ---------------[ Deleguate Methods ]---------------
     public void writeByte(int v) throws IOException {
 	out.writeByte(v);
@@ -0,0 +1,232 @@
+package io.github.totom3.commons.binary;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encodes and decodes UTF-8 strings without intermediate arrays. Strings are
+ * encoded straight into the buffer of a {@link ByteBufferOutput}, or into a
+ * reusable scratch array for other outputs; they are decoded straight from the
+ * array of a heap {@link ByteBufferInput}, or from the scratch array.
+ * <p>
+ * Unpaired surrogates are encoded as {@code '?'}, like
+ * {@link String#getBytes(java.nio.charset.Charset)} does. Instances are not
+ * thread-safe.
+ *
+ * @author Totom3
+ */
+final class StringCodec {
+
+    /**
+     * Scratch arrays larger than this are not kept around once used.
+     */
+    private static final int MAX_RETAINED_SCRATCH = 1 << 16;
+
+    private static final ThreadLocal<StringCodec> LOCAL = new ThreadLocal<StringCodec>() {
+
+	@Override
+	protected StringCodec initialValue() {
+	    return new StringCodec();
+	}
+    };
+
+    /**
+     * Returns the codec of the calling thread, for use by code that is not
+     * bound to a context.
+     *
+     * @return a codec for the current thread.
+     */
+    static StringCodec local() {
+	return LOCAL.get();
+    }
+
+    private byte[] scratch = new byte[128];
+
+    /**
+     * Returns the number of bytes {@code str} takes once encoded.
+     *
+     * @param str the string.
+     *
+     * @return the encoded length of {@code str}, in bytes.
+     */
+    static int encodedLength(String str) {
+	int len = str.length();
+	int bytes = len;
+
+	int i = 0;
+	while (i < len && str.charAt(i) < 0x80) {
+	    ++i;
+	}
+
+	for (; i < len; ++i) {
+	    char c = str.charAt(i);
+	    if (c < 0x80) {
+		continue;
+	    }
+	    if (c < 0x800) {
+		bytes += 1;
+	    } else if (Character.isSurrogate(c)) {
+		if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(str.charAt(i + 1))) {
+		    // 2 chars, 4 bytes
+		    bytes += 2;
+		    ++i;
+		}
+		// else: unpaired, encoded as '?'
+	    } else {
+		bytes += 2;
+	    }
+	}
+
+	return bytes;
+    }
+
+    /**
+     * Encodes a string into an array.
+     *
+     * @param str the string to encode.
+     * @param dst the array to write to; must have enough room.
+     * @param off the index to start writing at.
+     *
+     * @return the index following the last byte written.
+     */
+    static int encode(String str, byte[] dst, int off) {
+	int len = str.length();
+
+	// ASCII fast path
+	int i = 0;
+	for (char c; i < len && (c = str.charAt(i)) < 0x80; ++i) {
+	    dst[off++] = (byte) c;
+	}
+
+	for (; i < len; ++i) {
+	    char c = str.charAt(i);
+	    if (c < 0x80) {
+		dst[off++] = (byte) c;
+	    } else if (c < 0x800) {
+		dst[off++] = (byte) (0xC0 | (c >> 6));
+		dst[off++] = (byte) (0x80 | (c & 0x3F));
+	    } else if (Character.isSurrogate(c)) {
+		if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(str.charAt(i + 1))) {
+		    int cp = Character.toCodePoint(c, str.charAt(++i));
+		    dst[off++] = (byte) (0xF0 | (cp >> 18));
+		    dst[off++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+		    dst[off++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+		    dst[off++] = (byte) (0x80 | (cp & 0x3F));
+		} else {
+		    dst[off++] = '?';
+		}
+	    } else {
+		dst[off++] = (byte) (0xE0 | (c >> 12));
+		dst[off++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+		dst[off++] = (byte) (0x80 | (c & 0x3F));
+	    }
+	}
+
+	return off;
+    }
+
+    /**
+     * Encodes a string into a buffer, starting at its position.
+     *
+     * @param str the string to encode.
+     * @param dst the buffer to write to; must have enough room.
+     */
+    static void encode(String str, ByteBuffer dst) {
+	if (dst.hasArray()) {
+	    int start = dst.arrayOffset() + dst.position();
+	    int end = encode(str, dst.array(), start);
+	    dst.position(dst.position() + (end - start));
+	    return;
+	}
+
+	int len = str.length();
+	for (int i = 0; i < len; ++i) {
+	    char c = str.charAt(i);
+	    if (c < 0x80) {
+		dst.put((byte) c);
+	    } else if (c < 0x800) {
+		dst.put((byte) (0xC0 | (c >> 6)));
+		dst.put((byte) (0x80 | (c & 0x3F)));
+	    } else if (Character.isSurrogate(c)) {
+		if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(str.charAt(i + 1))) {
+		    int cp = Character.toCodePoint(c, str.charAt(++i));
+		    dst.put((byte) (0xF0 | (cp >> 18)));
+		    dst.put((byte) (0x80 | ((cp >> 12) & 0x3F)));
+		    dst.put((byte) (0x80 | ((cp >> 6) & 0x3F)));
+		    dst.put((byte) (0x80 | (cp & 0x3F)));
+		} else {
+		    dst.put((byte) '?');
+		}
+	    } else {
+		dst.put((byte) (0xE0 | (c >> 12)));
+		dst.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+		dst.put((byte) (0x80 | (c & 0x3F)));
+	    }
+	}
+    }
+
+    /**
+     * Writes the encoded bytes of a string, without any length prefix.
+     *
+     * @param out           the output to write to.
+     * @param str           the string to write.
+     * @param encodedLength the value of {@link #encodedLength(String)} for
+     *                      {@code str}.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    void write(DataOutput out, String str, int encodedLength) throws IOException {
+	if (out instanceof ByteBufferOutput) {
+	    ByteBufferOutput bufOut = (ByteBufferOutput) out;
+	    bufOut.ensureCapacity(encodedLength);
+	    encode(str, bufOut.buffer());
+	    return;
+	}
+
+	byte[] buf = scratch(encodedLength);
+	encode(str, buf, 0);
+	out.write(buf, 0, encodedLength);
+    }
+
+    /**
+     * Reads and decodes {@code length} bytes.
+     *
+     * @param in     the input to read from.
+     * @param length the number of bytes to read.
+     *
+     * @return the decoded string.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    String read(DataInput in, int length) throws IOException {
+	if (in instanceof ByteBufferInput) {
+	    ByteBufferInput bufIn = (ByteBufferInput) in;
+	    ByteBuffer buffer = bufIn.buffer();
+	    if (buffer.hasArray()) {
+		bufIn.require(length);
+		String str = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+		buffer.position(buffer.position() + length);
+		return str;
+	    }
+	}
+
+	byte[] buf = scratch(length);
+	in.readFully(buf, 0, length);
+	return new String(buf, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private byte[] scratch(int length) {
+	if (length <= scratch.length) {
+	    return scratch;
+	}
+
+	byte[] buf = new byte[Math.max(length, scratch.length << 1)];
+	if (buf.length <= MAX_RETAINED_SCRATCH) {
+	    scratch = buf;
+	}
+	return buf;
+    }
+}
@@ -0,0 +1,116 @@
+package io.github.totom3.commons.binary;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Variable-length integer encoding. Values are written 7 bits at a time, least
+ * significant group first, the high bit of each byte telling whether another
+ * byte follows. Values from {@code 0} to {@code 127} thus take a single byte.
+ * Signed values are first mapped to unsigned ones using ZigZag encoding, so
+ * that small negative values stay small as well.
+ *
+ * @author Totom3
+ */
+public final class VarInts {
+
+    private VarInts() {
+    }
+
+    public static int zigZag(int v) {
+	return (v << 1) ^ (v >> 31);
+    }
+
+    public static long zigZag(long v) {
+	return (v << 1) ^ (v >> 63);
+    }
+
+    public static int unZigZag(int v) {
+	return (v >>> 1) ^ -(v & 1);
+    }
+
+    public static long unZigZag(long v) {
+	return (v >>> 1) ^ -(v & 1);
+    }
+
+    /**
+     * Returns the number of bytes {@code v} takes once encoded with
+     * {@link #writeVarInt(DataOutput, int)}.
+     *
+     * @param v the value.
+     *
+     * @return the encoded size, from 1 to 5 bytes.
+     */
+    public static int sizeOf(int v) {
+	if ((v & (~0 << 7)) == 0) {
+	    return 1;
+	}
+	if ((v & (~0 << 14)) == 0) {
+	    return 2;
+	}
+	if ((v & (~0 << 21)) == 0) {
+	    return 3;
+	}
+	if ((v & (~0 << 28)) == 0) {
+	    return 4;
+	}
+	return 5;
+    }
+
+    public static void writeVarInt(DataOutput out, int v) throws IOException {
+	while ((v & ~0x7F) != 0) {
+	    out.writeByte((v & 0x7F) | 0x80);
+	    v >>>= 7;
+	}
+	out.writeByte(v);
+    }
+
+    public static void writeVarLong(DataOutput out, long v) throws IOException {
+	while ((v & ~0x7FL) != 0) {
+	    out.writeByte(((int) v & 0x7F) | 0x80);
+	    v >>>= 7;
+	}
+	out.writeByte((int) v);
+    }
+
+    public static void writeSignedVarInt(DataOutput out, int v) throws IOException {
+	writeVarInt(out, zigZag(v));
+    }
+
+    public static void writeSignedVarLong(DataOutput out, long v) throws IOException {
+	writeVarLong(out, zigZag(v));
+    }
+
+    public static int readVarInt(DataInput in) throws IOException {
+	int result = 0;
+	for (int shift = 0; shift < 32; shift += 7) {
+	    byte b = in.readByte();
+	    result |= (b & 0x7F) << shift;
+	    if (b >= 0) {
+		return result;
+	    }
+	}
+	throw new DeserializingException("Malformed variable-length int: more than 5 bytes");
+    }
+
+    public static long readVarLong(DataInput in) throws IOException {
+	long result = 0;
+	for (int shift = 0; shift < 64; shift += 7) {
+	    byte b = in.readByte();
+	    result |= (long) (b & 0x7F) << shift;
+	    if (b >= 0) {
+		return result;
+	    }
+	}
+	throw new DeserializingException("Malformed variable-length long: more than 10 bytes");
+    }
+
+    public static int readSignedVarInt(DataInput in) throws IOException {
+	return unZigZag(readVarInt(in));
+    }
+
+    public static long readSignedVarLong(DataInput in) throws IOException {
+	return unZigZag(readVarLong(in));
+    }
+}
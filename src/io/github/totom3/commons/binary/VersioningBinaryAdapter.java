@@ -5,6 +5,13 @@ import java.util.HashMap;
 import java.util.Map;
 
 /**
+ * Writes objects preceded by the version of the format they are written with,
+ * and reads them back with the adapter of that version.
+ * <p>
+ * If framing is enabled, every object is also written as a length-prefixed
+ * section, with its own reference tables, so that objects of an unknown
+ * version can be skipped (see {@link Builder#withFraming(boolean)}). Both
+ * sides must agree on whether framing is used.
  *
  * @author Totom3
  * @param <T>
@@ -16,11 +23,23 @@ public class VersioningBinaryAdapter<T> implements BinaryAdapter<T> {
     }
 
     private final Map<Integer, BinaryAdapter<T>> adapters;
+    private final boolean framed;
+    private final boolean skipFailures;
     private int savingVersion;
 
     public VersioningBinaryAdapter(int savingVersion, Map<Integer, BinaryAdapter<T>> adapters) {
+	this(savingVersion, adapters, false, false);
+    }
+
+    public VersioningBinaryAdapter(int savingVersion, Map<Integer, BinaryAdapter<T>> adapters, boolean framed, boolean skipFailures) {
 	this.adapters = new HashMap<>(adapters);
 	this.savingVersion = savingVersion;
+	this.framed = framed;
+	this.skipFailures = skipFailures;
+    }
+
+    public boolean isFramed() {
+	return framed;
     }
 
     public int getSavingVersion() {
@@ -34,10 +53,29 @@ public class VersioningBinaryAdapter<T> implements BinaryAdapter<T> {
     @Override
     public T read(DeserializationContext context) throws IOException {
 	int version = context.readInt();
+	if (framed) {
+	    return Frames.read(adapters.get(version), skipFailures, "object of version " + version, context);
+	}
 
 	return loadingAdapter(version).read(context);
     }
 
+    /**
+     * Skips a framed object without decoding it.
+     *
+     * @param context the context to read from.
+     *
+     * @throws IOException           if an I/O error occurs.
+     * @throws IllegalStateException if framing is not enabled.
+     */
+    public void skip(DeserializationContext context) throws IOException {
+	if (!framed) {
+	    throw new IllegalStateException("Only framed objects can be skipped");
+	}
+	context.readInt();
+	context.readSection();
+    }
+
     @Override
     public void write(T obj, SerializationContext context) throws IOException {
 	BinaryAdapter<T> adapt = savingAdapter();
@@ -46,7 +84,11 @@ public class VersioningBinaryAdapter<T> implements BinaryAdapter<T> {
 	context.writeInt(savingVersion);
 
 	// Write object
-	adapt.write(obj, context);
+	if (framed) {
+	    context.writeSection(obj, adapt);
+	} else {
+	    adapt.write(obj, context);
+	}
     }
 
     private BinaryAdapter<T> loadingAdapter(int version) throws SerializingException {
@@ -68,6 +110,8 @@ public class VersioningBinaryAdapter<T> implements BinaryAdapter<T> {
     public static class Builder<T> {
 
 	private final Map<Integer, BinaryAdapter<T>> adapters = new HashMap<>();
+	private boolean framed;
+	private boolean skipFailures;
 
 	private Builder() {
 	}
@@ -78,9 +122,37 @@ public class VersioningBinaryAdapter<T> implements BinaryAdapter<T> {
 	    }
 	    return this;
 	}
-	
+
+	/**
+	 * Adds an adapter generated for the specified version of a class, as
+	 * returned by {@link GeneratedAdapter#of(Class, int)}.
+	 *
+	 * @param version the version.
+	 * @param clazz   the class to generate an adapter for.
+	 *
+	 * @return this builder.
+	 */
+	public Builder<T> addGeneratedAdapter(int version, Class<T> clazz) {
+	    return addAdapter(version, GeneratedAdapter.of(clazz, version));
+	}
+
+	/**
+	 * Enables framing: every object is written as a length-prefixed section.
+	 *
+	 * @param skipFailures whether objects of an unknown version, or which
+	 *                     fail to decode, are read as {@code null} instead of
+	 *                     failing the read.
+	 *
+	 * @return this builder.
+	 */
+	public Builder<T> withFraming(boolean skipFailures) {
+	    this.framed = true;
+	    this.skipFailures = skipFailures;
+	    return this;
+	}
+
 	public VersioningBinaryAdapter<T> build(int savingVersion) {
-	    return new VersioningBinaryAdapter<>(savingVersion, adapters);
+	    return new VersioningBinaryAdapter<>(savingVersion, adapters, framed, skipFailures);
 	}
     }
 }
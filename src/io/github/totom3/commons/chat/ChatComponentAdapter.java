@@ -130,7 +130,7 @@ public class ChatComponentAdapter implements BinaryAdapter<ChatComponent> {
 	if (comp.hasInsertion()) {
 	    context.writeString(comp.getInsertion());
 	} else {
-	    context.writeInt(-1);
+	    context.writeString(null);
 	}
 
 	// Write click event
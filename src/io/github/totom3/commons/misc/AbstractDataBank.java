@@ -0,0 +1,293 @@
+package io.github.totom3.commons.misc;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Associates values to short IDs. This class hands out the IDs and holds the
+ * hooks subclasses customize values with; storing the values is left to
+ * {@link DataBank} and {@link ConcurrentDataBank}, which should be extended
+ * instead. The ID {@code 0} is never used, and marks missing values;
+ * {@link #RESERVED_ID} is never used either.
+ * <p>
+ * IDs freed by removals are handed out again before new ones, so that the ID
+ * space is not exhausted by churn.
+ *
+ * @author Totom3
+ * @param <E>
+ */
+public abstract class AbstractDataBank<E> {
+
+    /**
+     * An ID which is never used, so that encoders can use it as a marker.
+     */
+    public static final short RESERVED_ID = -1;
+
+    /**
+     * Number of distinct IDs, including {@code 0} and {@link #RESERVED_ID}.
+     */
+    static final int ID_COUNT = 1 << 16;
+
+    private final IdSupplier idSupplier = new IdSupplier();
+
+    AbstractDataBank() {
+    }
+
+    /**
+     * Returns the ID associated with a value present in this {@code DataBank}.
+     * If the provided one is not present in the cache, {@code 0} is returned.
+     *
+     * @param value the value to get the ID of.
+     *
+     * @return the ID of the provided value, or {@code 0} if said value is not
+     *         present.
+     *
+     * @throws NullPointerException if {@code value} is {@code null}.
+     */
+    public abstract short getByValue(E value);
+
+    /**
+     * Returns the value associated with the specified ID, or {@code null} if
+     * none is.
+     *
+     * @param id the ID of the value to get.
+     *
+     * @return the value with the specified ID, or {@code null} is none is.
+     */
+    public abstract E get(short id);
+
+    /**
+     * Checks whether the specified value is contained in this {@code DataBank}.
+     *
+     * @param val the value to check.
+     *
+     * @return {@code true} if a value is set for the specified value,
+     *         {@code false} otherwise.
+     */
+    public abstract boolean containsValue(E val);
+
+    public abstract boolean containsID(short key);
+
+    /**
+     * Associates a value to the specified ID.
+     *
+     * @param key the ID; cannot be {@code 0} nor {@link #RESERVED_ID}.
+     * @param val the value.
+     *
+     * @throws IllegalArgumentException if the ID is reserved or already used,
+     *                                  or if the value is already present or
+     *                                  is not valid.
+     */
+    public abstract void insert(short key, E val);
+
+    public short getOrInsert(E val) {
+	return doGetOrInsert(val);
+    }
+
+    protected abstract short doGetOrInsert(E val);
+
+    public boolean removeValue(E value) {
+	if (value == null || !isValueValid(value)) {
+	    return false;
+	}
+	return doRemoveValue(value);
+    }
+
+    protected abstract boolean doRemoveValue(E value);
+
+    public abstract E removeKey(short key);
+
+    /**
+     * Returns an unmodifiable view of the values of this {@code DataBank},
+     * mapped by ID.
+     *
+     * @return a view of the values of this {@code DataBank}.
+     */
+    public abstract Map<Short, E> all();
+
+    /**
+     * Returns an unmodifiable view of the IDs of this {@code DataBank}, mapped
+     * by value.
+     *
+     * @return a view of the IDs of this {@code DataBank}.
+     */
+    public abstract Map<E, Short> inversedAll();
+
+    public abstract void clear();
+
+    /**
+     * Renumbers the values of this {@code DataBank} from {@code 1} to
+     * {@link #size()}, keeping their relative order, and forgets the freed
+     * IDs. Values are externed with their old ID and interned with their new
+     * one.
+     *
+     * @return the new ID of every value, indexed by the unsigned value of its
+     *         old ID; IDs which were not in use are mapped to {@code 0}.
+     */
+    public abstract short[] compact();
+
+    public abstract int size();
+
+    /**
+     * Returns the IDs in use.
+     *
+     * @return a new array holding the IDs in use, in increasing order of their
+     *         unsigned value.
+     */
+    public abstract short[] ids();
+
+    /**
+     * Replaces the content of this {@code DataBank} with the specified values,
+     * sizing its tables once. Unlike {@link #insert(short, Object)}, values
+     * are not checked with {@link #isValueValid(Object)}; duplicate IDs and
+     * values are still rejected. New IDs are then handed out above the
+     * highest loaded one.
+     *
+     * @param ids    the IDs of the values, or {@code null} to number them from
+     *               {@code 1}.
+     * @param values the values.
+     *
+     * @throws IllegalArgumentException if an ID is reserved or appears twice,
+     *                                  if a value appears twice, or if there
+     *                                  are not as many IDs as values. The
+     *                                  content of the {@code DataBank} is then
+     *                                  left unchanged.
+     */
+    public abstract void load(short[] ids, List<? extends E> values);
+
+    /**
+     * Checks the arguments of {@link #load(short[], List)}, except for
+     * duplicates.
+     *
+     * @return the highest unsigned value of the IDs to load.
+     */
+    final int checkLoad(short[] ids, List<? extends E> values) {
+	checkNotNull(values, "Values cannot be null");
+	int count = values.size();
+	if (ids != null && ids.length != count) {
+	    throw new IllegalArgumentException("Got " + ids.length + " IDs for " + count + " values");
+	}
+	if (count > maxSize()) {
+	    throw new IllegalArgumentException("Too many values: " + count + " > " + maxSize());
+	}
+
+	int maxIndex = count;
+	if (ids != null) {
+	    for (short id : ids) {
+		checkId(id);
+		maxIndex = Math.max(maxIndex, id & 0xFFFF);
+	    }
+	}
+	return maxIndex;
+    }
+
+    /**
+     * Returns the maximum number of values this {@code DataBank} can hold.
+     *
+     * @return the number of usable IDs.
+     */
+    public int maxSize() {
+	return ID_COUNT - 2;
+    }
+
+    protected short nextId() {
+	return idSupplier.get();
+    }
+
+    static void checkId(short id) {
+	if (id == 0 || id == RESERVED_ID) {
+	    throw new IllegalArgumentException("Key " + id + " is reserved");
+	}
+    }
+
+    void releaseId(short id) {
+	idSupplier.release(id);
+    }
+
+    void resetIds(int next) {
+	idSupplier.reset(next);
+    }
+
+    protected E intern(E val, short id) {
+	return val;
+    }
+
+    protected E extern(E val, short id) {
+	return val;
+    }
+
+    protected boolean isValueValid(E val) {
+	return true;
+    }
+
+    @Override
+    public String toString() {
+	return all().toString();
+    }
+
+    @Override
+    public int hashCode() {
+	int hash = 3;
+	hash = 23 * hash + all().hashCode();
+	return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+	if (obj == null) {
+	    return false;
+	}
+	if (!(obj instanceof AbstractDataBank)) {
+	    return false;
+	}
+	final AbstractDataBank<?> other = (AbstractDataBank<?>) obj;
+
+	return all().equals(other.all());
+    }
+
+    /**
+     * Hands out freed IDs first, most recently freed first, then IDs never
+     * handed out yet, in increasing unsigned order.
+     */
+    static class IdSupplier {
+
+	/**
+	 * The unsigned value of the next ID never handed out; that of
+	 * {@code RESERVED_ID} once every ID was.
+	 */
+	int next = 1;
+	short[] free = new short[0];
+	int freeCount;
+
+	short get() {
+	    if (freeCount > 0) {
+		return free[--freeCount];
+	    }
+	    if (next >= (RESERVED_ID & 0xFFFF)) {
+		throw new NoSuchElementException("No more IDs available");
+	    }
+	    return (short) next++;
+	}
+
+	void release(short id) {
+	    // IDs not handed out yet will be anyway
+	    if ((id & 0xFFFF) >= next) {
+		return;
+	    }
+
+	    if (freeCount == free.length) {
+		free = Arrays.copyOf(free, Math.max(16, freeCount << 1));
+	    }
+	    free[freeCount++] = id;
+	}
+
+	void reset(int next) {
+	    this.next = next;
+	    this.free = new short[0];
+	    this.freeCount = 0;
+	}
+    }
+}
@@ -0,0 +1,422 @@
+package io.github.totom3.commons.misc;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A thread-safe counterpart of {@link DataBank}. {@link #get(short)},
+ * {@link #getByValue(Object)}, {@link #containsValue(Object)} and
+ * {@link #containsID(short)} never block; writes are serialized by a lock,
+ * and {@link #getOrInsert(Object)} only takes it when the value is absent, so
+ * that a value always gets a single ID, even when inserted by several threads
+ * at once.
+ * <p>
+ * A value is published to readers by ID before it is by value: once
+ * {@code getByValue} returned an ID, {@code get} returns the value for it
+ * until it is removed. The views returned by {@link #all()} and
+ * {@link #inversedAll()} are weakly consistent, and the latter is not
+ * iterated in any particular order.
+ * <p>
+ * Both tables are published together, as a single immutable snapshot, which
+ * every read takes once; {@link #clear()}, {@link #compact()} and
+ * {@link #load(short[], List)} replace it at once.
+ *
+ * @author Totom3
+ * @param <E>
+ */
+public class ConcurrentDataBank<E> extends AbstractDataBank<E> {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Object lock = new Object();
+
+    /**
+     * Only replaced while holding the lock.
+     */
+    private volatile Tables<E> tables;
+    private volatile int size;
+
+    private Map<Short, E> allView;
+    private Map<E, Short> inversedView;
+
+    public ConcurrentDataBank() {
+	tables = new Tables<>(new AtomicReferenceArray<>(INITIAL_CAPACITY), new ConcurrentHashMap<>());
+    }
+
+    @Override
+    public short getByValue(E value) {
+	checkNotNull(value);
+	Short id = tables.index.get(value);
+	return (id == null) ? 0 : id;
+    }
+
+    @Override
+    public E get(short id) {
+	E val = tables.value(id);
+	return (val == null)
+		? null
+		: extern(val, id);
+    }
+
+    @Override
+    public boolean containsValue(E val) {
+	if (val == null || !isValueValid(val)) {
+	    return false;
+	}
+	return tables.index.containsKey(val);
+    }
+
+    @Override
+    public boolean containsID(short key) {
+	return tables.value(key) != null;
+    }
+
+    @Override
+    public void insert(short key, E val) {
+	checkNotNull(val, "Value cannot be null");
+	checkId(key);
+
+	synchronized (lock) {
+	    Tables<E> t = tables;
+	    if (t.value(key) != null) {
+		throw new IllegalArgumentException("Key already present: " + key);
+	    }
+	    if (t.index.containsKey(val)) {
+		throw new IllegalArgumentException("Value already present: " + val);
+	    }
+	    if (!isValueValid(val)) {
+		throw new IllegalArgumentException("Invalid key: " + val);
+	    }
+	    store(key, intern(val, key));
+	}
+    }
+
+    @Override
+    protected short doGetOrInsert(E val) {
+	checkNotNull(val, "Value cannot be null");
+	if (!isValueValid(val)) {
+	    throw new IllegalArgumentException("Invalid value: " + val);
+	}
+
+	Short id = tables.index.get(val);
+	if (id != null) {
+	    return id;
+	}
+
+	synchronized (lock) {
+	    Tables<E> t = tables;
+	    id = t.index.get(val);
+	    if (id != null) {
+		return id;
+	    }
+
+	    short newKey;
+	    do {
+		newKey = nextId();
+	    } while (t.value(newKey) != null);
+	    store(newKey, intern(val, newKey));
+	    return newKey;
+	}
+    }
+
+    @Override
+    protected boolean doRemoveValue(E value) {
+	synchronized (lock) {
+	    Tables<E> t = tables;
+	    Short id = t.index.remove(value);
+	    if (id == null) {
+		return false;
+	    }
+
+	    t.values.set(id & 0xFFFF, null);
+	    --size;
+	    releaseId(id);
+	    return true;
+	}
+    }
+
+    @Override
+    public E removeKey(short key) {
+	synchronized (lock) {
+	    Tables<E> t = tables;
+	    E removed = t.value(key);
+	    if (removed == null) {
+		return null;
+	    }
+
+	    t.index.remove(removed);
+	    t.values.set(key & 0xFFFF, null);
+	    --size;
+	    releaseId(key);
+	    return extern(removed, key);
+	}
+    }
+
+    @Override
+    public Map<Short, E> all() {
+	if (allView == null) {
+	    allView = new AllView();
+	}
+	return allView;
+    }
+
+    @Override
+    public Map<E, Short> inversedAll() {
+	if (inversedView == null) {
+	    inversedView = new InversedView();
+	}
+	return inversedView;
+    }
+
+    @Override
+    public void clear() {
+	synchronized (lock) {
+	    tables = new Tables<>(new AtomicReferenceArray<>(INITIAL_CAPACITY), new ConcurrentHashMap<>());
+	    size = 0;
+	    resetIds(1);
+	}
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Reads running at the same time may return either old or new IDs.
+     */
+    @Override
+    public short[] compact() {
+	synchronized (lock) {
+	    AtomicReferenceArray<E> oldValues = tables.values;
+	    short[] remap = new short[oldValues.length()];
+
+	    int capacity = INITIAL_CAPACITY;
+	    while (capacity <= size) {
+		capacity <<= 1;
+	    }
+	    AtomicReferenceArray<E> newValues = new AtomicReferenceArray<>(capacity);
+	    ConcurrentMap<E, Short> newIndex = new ConcurrentHashMap<>(capacity);
+
+	    int next = 1;
+	    for (int i = 0; i < oldValues.length(); ++i) {
+		E old = oldValues.get(i);
+		if (old == null) {
+		    continue;
+		}
+
+		short id = (short) next++;
+		E val = intern(extern(old, (short) i), id);
+		remap[i] = id;
+		newValues.set(id, val);
+		newIndex.put(val, id);
+	    }
+
+	    tables = new Tables<>(newValues, newIndex);
+	    resetIds(next);
+	    return remap;
+	}
+    }
+
+    @Override
+    public int size() {
+	return size;
+    }
+
+    @Override
+    public short[] ids() {
+	AtomicReferenceArray<E> array = tables.values;
+	short[] result = new short[size];
+	int n = 0;
+	for (int i = 0; i < array.length(); ++i) {
+	    if (array.get(i) != null) {
+		if (n == result.length) {
+		    result = Arrays.copyOf(result, Math.max(16, n << 1));
+		}
+		result[n++] = (short) i;
+	    }
+	}
+	return (n == result.length) ? result : Arrays.copyOf(result, n);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The new content is built aside and published at once; reads running at
+     * the same time see either the old or the new content.
+     */
+    @Override
+    public void load(short[] ids, List<? extends E> values) {
+	int maxIndex = checkLoad(ids, values);
+	int count = values.size();
+
+	int capacity = INITIAL_CAPACITY;
+	while (capacity <= maxIndex) {
+	    capacity <<= 1;
+	}
+	AtomicReferenceArray<E> newValues = new AtomicReferenceArray<>(capacity);
+	ConcurrentMap<E, Short> newIndex = new ConcurrentHashMap<>(Math.max(INITIAL_CAPACITY, count << 1));
+
+	for (int i = 0; i < count; ++i) {
+	    short id = (ids == null) ? (short) (i + 1) : ids[i];
+	    E val = values.get(i);
+	    checkNotNull(val, "Values cannot contain null");
+	    if (newValues.get(id & 0xFFFF) != null) {
+		throw new IllegalArgumentException("Key already present: " + id);
+	    }
+
+	    E interned = intern(val, id);
+	    if (newIndex.putIfAbsent(interned, id) != null) {
+		throw new IllegalArgumentException("Value already present: " + val);
+	    }
+	    newValues.lazySet(id & 0xFFFF, interned);
+	}
+
+	synchronized (lock) {
+	    tables = new Tables<>(newValues, newIndex);
+	    size = count;
+	    resetIds(maxIndex + 1);
+	}
+    }
+
+    /**
+     * Stores a value which is not present yet. Must be called while holding
+     * the lock.
+     */
+    private void store(short id, E val) {
+	int i = id & 0xFFFF;
+	Tables<E> t = tables;
+	AtomicReferenceArray<E> array = t.values;
+	if (i >= array.length()) {
+	    AtomicReferenceArray<E> grown = new AtomicReferenceArray<>(Math.min(Integer.highestOneBit(i) << 1, ID_COUNT));
+	    for (int j = 0; j < array.length(); ++j) {
+		grown.lazySet(j, array.get(j));
+	    }
+	    grown.set(i, val);
+	    tables = t = new Tables<>(grown, t.index);
+	} else {
+	    array.set(i, val);
+	}
+
+	// Only visible by value once visible by ID
+	t.index.put(val, id);
+	++size;
+    }
+
+    private final class AllView extends AbstractMap<Short, E> {
+
+	@Override
+	public int size() {
+	    return size;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+	    return (key instanceof Short) && containsID((Short) key);
+	}
+
+	@Override
+	public E get(Object key) {
+	    return (key instanceof Short) ? tables.value((Short) key) : null;
+	}
+
+	@Override
+	public Set<Entry<Short, E>> entrySet() {
+	    return new AbstractSet<Entry<Short, E>>() {
+
+		@Override
+		public int size() {
+		    return size;
+		}
+
+		@Override
+		public Iterator<Entry<Short, E>> iterator() {
+		    return new Iterator<Entry<Short, E>>() {
+
+			private final AtomicReferenceArray<E> array = tables.values;
+			private int next = -1;
+			private E nextValue = advance();
+
+			private E advance() {
+			    while (++next < array.length()) {
+				E val = array.get(next);
+				if (val != null) {
+				    return val;
+				}
+			    }
+			    return null;
+			}
+
+			@Override
+			public boolean hasNext() {
+			    return nextValue != null;
+			}
+
+			@Override
+			public Entry<Short, E> next() {
+			    if (nextValue == null) {
+				throw new NoSuchElementException();
+			    }
+			    Entry<Short, E> entry = new SimpleImmutableEntry<>((short) next, nextValue);
+			    nextValue = advance();
+			    return entry;
+			}
+		    };
+		}
+	    };
+	}
+    }
+
+    private final class InversedView extends AbstractMap<E, Short> {
+
+	@Override
+	public int size() {
+	    return size;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+	    return key != null && tables.index.containsKey(key);
+	}
+
+	@Override
+	public Short get(Object key) {
+	    return (key == null) ? null : tables.index.get(key);
+	}
+
+	@Override
+	public Set<Entry<E, Short>> entrySet() {
+	    return Collections.unmodifiableMap(tables.index).entrySet();
+	}
+    }
+
+    /**
+     * The values, indexed by the unsigned value of their ID, and the ID of
+     * every value. Only replaced as a whole: by a copy with a larger array
+     * when a value does not fit, and by new tables when the content is
+     * replaced.
+     */
+    private static final class Tables<E> {
+
+	final AtomicReferenceArray<E> values;
+	final ConcurrentMap<E, Short> index;
+
+	Tables(AtomicReferenceArray<E> values, ConcurrentMap<E, Short> index) {
+	    this.values = values;
+	    this.index = index;
+	}
+
+	E value(short id) {
+	    int i = id & 0xFFFF;
+	    return (i < values.length()) ? values.get(i) : null;
+	}
+    }
+}
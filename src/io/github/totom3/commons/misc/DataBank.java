@@ -1,201 +1,497 @@
 package io.github.totom3.commons.misc;
 
 import static com.google.common.base.Preconditions.checkNotNull;
-import com.google.common.collect.BiMap;
-import com.google.common.collect.HashBiMap;
-import java.util.Collections;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
-import java.util.Objects;
+import java.util.Set;
 
 /**
+ * Associates values to short IDs. IDs are stored in an array indexed by ID,
+ * and values in an open-addressing hash table mapping them to their ID, so
+ * that lookups in either direction neither box the ID nor allocate. Removals
+ * leave holes until the IDs are reused; {@link #compact()} renumbers the
+ * values densely.
+ * <p>
+ * Instances are not thread-safe; see {@link ConcurrentDataBank}.
  *
  * @author Totom3
  * @param <E>
  */
-public class DataBank<E> {
+public class DataBank<E> extends AbstractDataBank<E> {
 
-    protected final BiMap<Short, E> cache;
+    private static final int INITIAL_CAPACITY = 16;
 
-    private final IdSupplier idSupplier = new IdSupplier();
+    /**
+     * The values, indexed by the unsigned value of their ID.
+     */
+    private Object[] values;
+
+    /**
+     * Open-addressing table of the values, with linear probing; the ID of the
+     * value at {@code keys[i]} is {@code ids[i]}. Always at most half full.
+     */
+    private Object[] keys;
+    private short[] ids;
+
+    private int size;
+
+    private Map<Short, E> allView;
+    private Map<E, Short> inversedView;
 
     public DataBank() {
-	cache = HashBiMap.create();
+	values = new Object[INITIAL_CAPACITY];
+	keys = new Object[INITIAL_CAPACITY];
+	ids = new short[INITIAL_CAPACITY];
     }
 
-    /**
-     * Returns the ID associated with a value present in this {@code DataBank}.
-     * If the provided one is not present in the cache, {@code null} is
-     * returned.
-     *
-     * @param value the value to get the ID of.
-     *
-     * @return the ID of the provided value, or {@code null} if said value is
-     *         not present.
-     *
-     * @throws NullPointerException if {@code value} is {@code null} and this
-     *                              implementation does not accept {@code null}
-     *                              values.
-     */
+    @Override
     public short getByValue(E value) {
 	checkNotNull(value);
-	return cache.inverse().get(value);
+	int slot = slot(value);
+	return (slot < 0) ? 0 : ids[slot];
     }
 
-    /**
-     * Returns the value associated with the specified ID, or {@code null} if
-     * none is.
-     *
-     * @param id the ID of the value to get.
-     *
-     * @return the value with the specified ID, or {@code null} is none is.
-     */
+    @Override
     public E get(short id) {
-	E val = cache.get(id);
+	E val = value(id);
 	return (val == null)
 		? null
 		: extern(val, id);
     }
 
-    /**
-     * Checks whether the specified value is contained in this {@code DataBank}.
-     *
-     * @param val the value to check.
-     *
-     * @return {@code true} if a value is set for the specified value,
-     *         {@code false} otherwise.
-     */
+    @Override
     public boolean containsValue(E val) {
-	if (!isValueValid(val)) {
+	if (val == null || !isValueValid(val)) {
 	    return false;
 	}
-	return cache.inverse().get(val) != null;
+	return slot(val) >= 0;
     }
 
+    @Override
     public boolean containsID(short key) {
-	return cache.get(key) != null;
+	return value(key) != null;
     }
 
+    @Override
     public void insert(short key, E val) {
-	if (cache.containsKey(key)) {
+	checkNotNull(val, "Value cannot be null");
+	checkId(key);
+	if (containsID(key)) {
 	    throw new IllegalArgumentException("Key already present: " + key);
 	}
-	if (cache.inverse().get(val) != null) {
+	int slot = slot(val);
+	if (slot >= 0) {
 	    throw new IllegalArgumentException("Value already present: " + val);
 	}
 	if (!isValueValid(val)) {
 	    throw new IllegalArgumentException("Invalid key: " + val);
 	}
-	cache.put(key, intern(val, key));
-    }
-
-    public short getOrInsert(E val) {
-	return doGetOrInsert(val);
+	E interned = intern(val, key);
+	put(key, interned, (interned == val) ? slot : slot(interned));
     }
 
+    @Override
     protected final short doGetOrInsert(E val) {
+	checkNotNull(val, "Value cannot be null");
 	if (!isValueValid(val)) {
 	    throw new IllegalArgumentException("Invalid value: " + val);
 	}
 
-	Short key = cache.inverse().get(val);
-	if (key != null) {
-	    return key;
+	int slot = slot(val);
+	if (slot >= 0) {
+	    return ids[slot];
 	}
-	short newKey = nextId();
-	cache.put(newKey, intern(val, newKey));
+
+	short newKey;
+	do {
+	    newKey = nextId();
+	} while (containsID(newKey));
+	E interned = intern(val, newKey);
+	put(newKey, interned, (interned == val) ? slot : slot(interned));
 	return newKey;
     }
 
-    public boolean removeValue(E value) {
-	if (!isValueValid(value)) {
+    @Override
+    protected final boolean doRemoveValue(E value) {
+	int slot = slot(value);
+	if (slot < 0) {
 	    return false;
 	}
-	return doRemoveValue(value);
-    }
 
-    protected final boolean doRemoveValue(E value) {
-	return cache.inverse().remove(value) != null;
+	short id = ids[slot];
+	values[id & 0xFFFF] = null;
+	removeSlot(slot);
+	--size;
+	releaseId(id);
+	return true;
     }
 
+    @Override
     public E removeKey(short key) {
-	E removed = cache.remove(key);
-	return (removed == null)
-		? null
-		: extern(removed, key);
+	E removed = value(key);
+	if (removed == null) {
+	    return null;
+	}
+
+	values[key & 0xFFFF] = null;
+	removeSlot(slot(removed));
+	--size;
+	releaseId(key);
+	return extern(removed, key);
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The view is iterated in increasing order of the unsigned value of the
+     * IDs.
+     */
+    @Override
     public final Map<Short, E> all() {
-	return Collections.unmodifiableMap(cache);
+	if (allView == null) {
+	    allView = new AllView();
+	}
+	return allView;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The view is iterated in the same order as {@link #all()}.
+     */
+    @Override
     public final Map<E, Short> inversedAll() {
-	return Collections.unmodifiableMap(cache.inverse());
+	if (inversedView == null) {
+	    inversedView = new InversedView();
+	}
+	return inversedView;
     }
 
+    @Override
     public final void clear() {
-	cache.clear();
+	values = new Object[INITIAL_CAPACITY];
+	keys = new Object[INITIAL_CAPACITY];
+	ids = new short[INITIAL_CAPACITY];
+	size = 0;
+	resetIds(1);
     }
 
+    @Override
+    @SuppressWarnings("unchecked")
+    public short[] compact() {
+	Object[] oldValues = values;
+	short[] remap = new short[oldValues.length];
+
+	int capacity = INITIAL_CAPACITY;
+	while (capacity <= size) {
+	    capacity <<= 1;
+	}
+	values = new Object[capacity];
+	keys = new Object[Math.max(INITIAL_CAPACITY, capacity << 1)];
+	ids = new short[keys.length];
+	size = 0;
+
+	int next = 1;
+	for (int i = 0; i < oldValues.length; ++i) {
+	    if (oldValues[i] == null) {
+		continue;
+	    }
+
+	    short id = (short) next++;
+	    E val = intern(extern((E) oldValues[i], (short) i), id);
+	    remap[i] = id;
+	    put(id, val, slot(val));
+	}
+	resetIds(next);
+	return remap;
+    }
+
+    @Override
     public final int size() {
-	return cache.size();
+	return size;
+    }
+
+    @Override
+    public short[] ids() {
+	short[] result = new short[size];
+	int n = 0;
+	for (int i = 0; i < values.length; ++i) {
+	    if (values[i] != null) {
+		result[n++] = (short) i;
+	    }
+	}
+	return result;
     }
 
-    public int maxSize() {
-	return idSupplier.get();
+    @Override
+    public void load(short[] ids, List<? extends E> values) {
+	int maxIndex = checkLoad(ids, values);
+	int count = values.size();
+
+	Object[] oldValues = this.values;
+	Object[] oldKeys = this.keys;
+	short[] oldIds = this.ids;
+	int oldSize = this.size;
+
+	int capacity = INITIAL_CAPACITY;
+	while (capacity <= maxIndex) {
+	    capacity <<= 1;
+	}
+	this.values = new Object[capacity];
+	capacity = INITIAL_CAPACITY;
+	while (capacity < count << 1) {
+	    capacity <<= 1;
+	}
+	this.keys = new Object[capacity];
+	this.ids = new short[capacity];
+	this.size = 0;
+
+	try {
+	    for (int i = 0; i < count; ++i) {
+		short id = (ids == null) ? (short) (i + 1) : ids[i];
+		E val = values.get(i);
+		checkNotNull(val, "Values cannot contain null");
+		if (this.values[id & 0xFFFF] != null) {
+		    throw new IllegalArgumentException("Key already present: " + id);
+		}
+
+		E interned = intern(val, id);
+		int slot = slot(interned);
+		if (slot >= 0) {
+		    throw new IllegalArgumentException("Value already present: " + val);
+		}
+		put(id, interned, slot);
+	    }
+	} catch (RuntimeException ex) {
+	    this.values = oldValues;
+	    this.keys = oldKeys;
+	    this.ids = oldIds;
+	    this.size = oldSize;
+	    throw ex;
+	}
+	resetIds(maxIndex + 1);
     }
 
-    protected short nextId() {
-	return idSupplier.get();
+    @SuppressWarnings("unchecked")
+    private E value(short id) {
+	int index = id & 0xFFFF;
+	return (index < values.length) ? (E) values[index] : null;
     }
 
-    protected E intern(E val, short id) {
-	return val;
+    /**
+     * Stores a value which is not present yet.
+     *
+     * @param slot the negative result of {@link #slot(Object)} for the value.
+     */
+    private void put(short id, E val, int slot) {
+	int index = id & 0xFFFF;
+	if (index >= values.length) {
+	    values = Arrays.copyOf(values, Math.min(Integer.highestOneBit(index) << 1, ID_COUNT));
+	}
+
+	if ((size + 1) << 1 > keys.length) {
+	    rehash(keys.length << 1);
+	    slot = slot(val);
+	}
+
+	values[index] = val;
+	slot = -slot - 1;
+	keys[slot] = val;
+	ids[slot] = id;
+	++size;
     }
 
-    protected E extern(E val, short id) {
-	return val;
+    /**
+     * Returns the slot of a value in the hash table, or {@code -(i + 1)} if
+     * it is absent, {@code i} being the slot it would be stored in.
+     */
+    private int slot(Object value) {
+	int mask = keys.length - 1;
+	int i = mix(value.hashCode()) & mask;
+
+	Object key;
+	while ((key = keys[i]) != null) {
+	    if (key == value || value.equals(key)) {
+		return i;
+	    }
+	    i = (i + 1) & mask;
+	}
+	return -i - 1;
     }
 
-    protected boolean isValueValid(E val) {
-	return true;
+    /**
+     * Empties a slot of the hash table, shifting back the values which follow
+     * it, so that no probe sequence is broken.
+     */
+    private void removeSlot(int slot) {
+	int mask = keys.length - 1;
+	int i = slot;
+	int j = slot;
+	while (true) {
+	    j = (j + 1) & mask;
+	    Object key = keys[j];
+	    if (key == null) {
+		break;
+	    }
+
+	    // Move the value back unless its home slot is between i and j
+	    int home = mix(key.hashCode()) & mask;
+	    if ((i <= j) ? (home <= i || home > j) : (home <= i && home > j)) {
+		keys[i] = key;
+		ids[i] = ids[j];
+		i = j;
+	    }
+	}
+	keys[i] = null;
     }
 
-    @Override
-    public String toString() {
-	return cache.toString();
+    private void rehash(int capacity) {
+	Object[] oldKeys = keys;
+	short[] oldIds = ids;
+	keys = new Object[capacity];
+	ids = new short[capacity];
+
+	int mask = capacity - 1;
+	for (int k = 0; k < oldKeys.length; ++k) {
+	    Object key = oldKeys[k];
+	    if (key == null) {
+		continue;
+	    }
+
+	    int i = mix(key.hashCode()) & mask;
+	    while (keys[i] != null) {
+		i = (i + 1) & mask;
+	    }
+	    keys[i] = key;
+	    ids[i] = oldIds[k];
+	}
     }
 
-    @Override
-    public int hashCode() {
-	int hash = 3;
-	hash = 23 * hash + Objects.hashCode(this.cache);
-	return hash;
+    private static int mix(int hash) {
+	int h = hash * 0x9E3779B9;
+	return h ^ (h >>> 16);
     }
 
-    @Override
-    public boolean equals(Object obj) {
-	if (obj == null) {
-	    return false;
+    /**
+     * Iterates over the IDs in use, in increasing unsigned order.
+     */
+    private abstract class IdIterator<T> implements Iterator<T> {
+
+	private final Object[] array = values;
+	private int next = advance(0);
+
+	private int advance(int from) {
+	    while (from < array.length && array[from] == null) {
+		++from;
+	    }
+	    return from;
 	}
-	if (!(obj instanceof DataBank)) {
-	    return false;
+
+	@Override
+	public boolean hasNext() {
+	    return next < array.length;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public T next() {
+	    if (!hasNext()) {
+		throw new NoSuchElementException();
+	    }
+	    int index = next;
+	    next = advance(index + 1);
+	    return entry((short) index, (E) array[index]);
+	}
+
+	abstract T entry(short id, E val);
+    }
+
+    private final class AllView extends AbstractMap<Short, E> {
+
+	@Override
+	public int size() {
+	    return size;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+	    return (key instanceof Short) && containsID((Short) key);
+	}
+
+	@Override
+	public E get(Object key) {
+	    return (key instanceof Short) ? value((Short) key) : null;
+	}
+
+	@Override
+	public Set<Entry<Short, E>> entrySet() {
+	    return new AbstractSet<Entry<Short, E>>() {
+
+		@Override
+		public int size() {
+		    return size;
+		}
+
+		@Override
+		public Iterator<Entry<Short, E>> iterator() {
+		    return new IdIterator<Entry<Short, E>>() {
+
+			@Override
+			Entry<Short, E> entry(short id, E val) {
+			    return new SimpleImmutableEntry<>(id, val);
+			}
+		    };
+		}
+	    };
 	}
-	final DataBank<?> other = (DataBank<?>) obj;
-	
-	return cache.equals(other.cache);
     }
 
-    static class IdSupplier {
+    private final class InversedView extends AbstractMap<E, Short> {
 
-	short current = 1;
+	@Override
+	public int size() {
+	    return size;
+	}
 
-	short get() {
-	    short newId = current++;
-	    if (newId == 0) {
-		throw new NoSuchElementException();
+	@Override
+	public boolean containsKey(Object key) {
+	    return key != null && slot(key) >= 0;
+	}
+
+	@Override
+	public Short get(Object key) {
+	    if (key == null) {
+		return null;
 	    }
-	    return newId;
+	    int slot = slot(key);
+	    return (slot < 0) ? null : ids[slot];
+	}
+
+	@Override
+	public Set<Entry<E, Short>> entrySet() {
+	    return new AbstractSet<Entry<E, Short>>() {
+
+		@Override
+		public int size() {
+		    return size;
+		}
+
+		@Override
+		public Iterator<Entry<E, Short>> iterator() {
+		    return new IdIterator<Entry<E, Short>>() {
+
+			@Override
+			Entry<E, Short> entry(short id, E val) {
+			    return new SimpleImmutableEntry<>(val, id);
+			}
+		    };
+		}
+	    };
 	}
     }
 
@@ -1,16 +1,37 @@
 package io.github.totom3.commons.misc;
 
 import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.common.util.concurrent.UncheckedExecutionException;
+import java.lang.management.ManagementFactory;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
 
 /**
+ * A cache of values loaded on demand. Values inserted with
+ * {@link #set(Object, Object)} are marked as <em>dirty</em>, that is, changed
+ * since they were loaded or last saved; values modified in place should be
+ * marked with {@link #markDirty(Object)}.
+ * <p>
+ * Values can also be loaded asynchronously, on a dedicated executor. Concurrent
+ * asynchronous loads of the same key share a single load. Subclasses wanting
+ * values to be refreshed periodically should configure the cache returned by
+ * {@link #makeCache()} with {@code refreshAfterWrite}; dirty values are
+ * never refreshed by {@link #refreshAsync(Object)}.
  *
  * @author Totom3
  * @param <K>
@@ -20,6 +41,10 @@ public abstract class DataCache<K, V> {
     private static final Logger LOGGER = Logger.getLogger(DataCache.class.getName());
 
     protected final LoadingCache<K, V> cache;
+    private final Set<K> dirty = ConcurrentHashMap.newKeySet();
+    private final ConcurrentMap<K, CompletableFuture<V>> loads = new ConcurrentHashMap<>();
+    private ExecutorService loadExecutor;
+    private boolean loadShutdown;
 
     public DataCache() {
 	cache = makeCache();
@@ -32,8 +57,7 @@ public abstract class DataCache<K, V> {
     public V getOrLoad(K key) throws ExecutionException {
 	V element = cache.getIfPresent(key);
 	if (element == null) {
-	    element = cache.get(key);
-	    onLoad(key, element);
+	    element = loaded(key, cache.get(key));
 	}
 	return element;
     }
@@ -41,12 +65,34 @@ public abstract class DataCache<K, V> {
     public V getOrLoadUnchecked(K key) throws UncheckedExecutionException {
 	V element = cache.getIfPresent(key);
 	if (element == null) {
-	    element = cache.getUnchecked(key);
-	    onLoad(key, element);
+	    element = loaded(key, cache.getUnchecked(key));
 	}
 	return element;
     }
 
+    /**
+     * Clears the dirty flag left by an evicted value of a key, and calls
+     * {@link #onLoad(Object, Object)}, unless the loaded value was replaced
+     * while loading; the dirty flag of the replacing value is then kept, and
+     * it is returned instead.
+     */
+    private V loaded(K key, V element) {
+	// Cleared first, so that a value set from now on stays dirty
+	boolean wasDirty = dirty.remove(key);
+	V current = cache.asMap().get(key);
+	if (current != element) {
+	    if (current == null) {
+		return element;
+	    }
+	    if (wasDirty) {
+		dirty.add(key);
+	    }
+	    return current;
+	}
+	onLoad(key, element);
+	return element;
+    }
+
     public V tryGetOrLoad(K key) {
 	try {
 	    return getOrLoad(key);
@@ -56,13 +102,140 @@ public abstract class DataCache<K, V> {
 	}
     }
 
+    // --------------------------[ Asynchronous loads ]--------------------------
+    /**
+     * Returns the value of a key, loading it on the load executor if needed.
+     * If a load of that key is already running, its future is returned.
+     * {@link #onLoad(Object, Object)} is then called from the load executor.
+     *
+     * @param key the key to get the value of.
+     *
+     * @return a future completed with the value, or completed exceptionally
+     *         with the cause of the failure if it could not be loaded.
+     */
+    public CompletableFuture<V> getOrLoadAsync(K key) {
+	V element = cache.getIfPresent(key);
+	if (element != null) {
+	    return CompletableFuture.completedFuture(element);
+	}
+
+	CompletableFuture<V> created = new CompletableFuture<>();
+	CompletableFuture<V> running = loads.putIfAbsent(key, created);
+	if (running != null) {
+	    return running;
+	}
+
+	try {
+	    loadExecutor().execute(() -> {
+		try {
+		    created.complete(getOrLoad(key));
+		} catch (ExecutionException | UncheckedExecutionException ex) {
+		    created.completeExceptionally(ex.getCause());
+		} catch (RuntimeException | Error ex) {
+		    created.completeExceptionally(ex);
+		} finally {
+		    loads.remove(key, created);
+		}
+	    });
+	} catch (RejectedExecutionException ex) {
+	    loads.remove(key, created);
+	    created.completeExceptionally(ex);
+	}
+	return created;
+    }
+
+    /**
+     * Starts loading the value of a key in the background, if it is not
+     * loaded yet; for instance, as soon as a player starts joining. Failures
+     * are logged.
+     *
+     * @param key the key to load the value of.
+     */
+    public void preload(K key) {
+	getOrLoadAsync(key).whenComplete((element, ex) -> {
+	    if (ex != null) {
+		LOGGER.log(Level.SEVERE, "Could not preload value for key " + key, ex);
+	    }
+	});
+    }
+
+    public void preloadAll(Iterable<? extends K> keys) {
+	for (K key : keys) {
+	    preload(key);
+	}
+    }
+
+    /**
+     * Reloads the value of a key on the load executor, as by
+     * {@link LoadingCache#refresh(Object)}: the old value keeps being returned
+     * until the new one is loaded. Values that are not loaded, or that are
+     * dirty, are left untouched.
+     *
+     * @param key the key whose value to refresh.
+     *
+     * @return a future completed with the value cached once the refresh is
+     *         done, or {@code null} if none is; completed exceptionally with a
+     *         {@code RejectedExecutionException} if loads were shut down.
+     */
+    public CompletableFuture<V> refreshAsync(K key) {
+	try {
+	    return CompletableFuture.supplyAsync(() -> {
+		if (isLoaded(key) && !isDirty(key)) {
+		    cache.refresh(key);
+		}
+		return cache.getIfPresent(key);
+	    }, loadExecutor());
+	} catch (RejectedExecutionException ex) {
+	    CompletableFuture<V> failed = new CompletableFuture<>();
+	    failed.completeExceptionally(ex);
+	    return failed;
+	}
+    }
+
+    /**
+     * Stops the load executor. Loads already started are completed;
+     * asynchronous loads requested afterwards fail with a
+     * {@code RejectedExecutionException}.
+     */
+    public synchronized void shutdownLoads() {
+	loadShutdown = true;
+	if (loadExecutor != null) {
+	    loadExecutor.shutdown();
+	}
+    }
+
+    /**
+     * Creates the executor asynchronous loads are run on. It is created when
+     * first needed. The default implementation uses two daemon threads.
+     *
+     * @return a new executor.
+     */
+    protected ExecutorService makeLoadExecutor() {
+	return Executors.newFixedThreadPool(2, new ThreadFactoryBuilder()
+		.setNameFormat(getClass().getSimpleName() + " Load Thread #%d")
+		.setDaemon(true)
+		.build());
+    }
+
+    private synchronized ExecutorService loadExecutor() {
+	if (loadExecutor == null) {
+	    if (loadShutdown) {
+		throw new RejectedExecutionException("Load executor was shut down");
+	    }
+	    loadExecutor = makeLoadExecutor();
+	}
+	return loadExecutor;
+    }
+
     public void set(K key, V value) {
 	if (value == null) {
 	    onRemove(key, null);
 	    cache.invalidate(key);
+	    dirty.remove(key);
 	} else {
 	    onSet(key, value);
 	    cache.put(key, value);
+	    dirty.add(key);
 	}
     }
 
@@ -72,6 +245,7 @@ public abstract class DataCache<K, V> {
 	V element = map.get(key);
 	onRemove(key, element);
 	map.remove(key);
+	dirty.remove(key);
 
 	return element;
     }
@@ -85,9 +259,49 @@ public abstract class DataCache<K, V> {
 
 	    onRemove(key, value);
 	    it.remove();
+	    dirty.remove(key);
 	}
     }
 
+    // --------------------------[ Statistics ]--------------------------
+    /**
+     * Returns a snapshot of the statistics of this cache. Hit, miss, load and
+     * eviction counts are only recorded if the cache returned by
+     * {@link #makeCache()} was built with {@code recordStats()}.
+     *
+     * @return the current statistics.
+     */
+    public DataCacheStats getStats() {
+	return new DataCacheStats(cache.stats(), cache.size(), dirtyCount());
+    }
+
+    /**
+     * Registers an MXBean exposing the statistics of this cache with the
+     * platform MBean server, under
+     * {@code io.github.totom3.commons:type=DataCache,name=<name>}. It is a
+     * {@link DataCacheMXBean}, or a {@link SaveableDataCacheMXBean} for
+     * saveable caches.
+     *
+     * @param name the name of this cache.
+     *
+     * @return the name the MXBean was registered under.
+     *
+     * @throws JMException if the MXBean cannot be registered, for instance
+     *                     because the name is already in use.
+     */
+    public ObjectName registerMBean(String name) throws JMException {
+	ObjectName objectName = ObjectName.getInstance("io.github.totom3.commons:type=DataCache,name=" + ObjectName.quote(name));
+	ManagementFactory.getPlatformMBeanServer().registerMBean(createMBean(), objectName);
+	return objectName;
+    }
+
+    /**
+     * Creates the MXBean registered by {@link #registerMBean(String)}.
+     */
+    StandardMBean createMBean() {
+	return new StandardMBean(new StatsMXBean(), DataCacheMXBean.class, true);
+    }
+
     public int size() {
 	return (int) cache.size();
     }
@@ -100,8 +314,107 @@ public abstract class DataCache<K, V> {
 	return cache.asMap();
     }
 
+    /**
+     * Marks the value of a key as changed, so that it is saved by the next
+     * incremental save. Does nothing if no value is loaded for {@code key}.
+     *
+     * @param key the key whose value changed.
+     *
+     * @return {@code true} if a value is loaded for {@code key}.
+     */
+    public boolean markDirty(K key) {
+	if (!isLoaded(key)) {
+	    return false;
+	}
+	dirty.add(key);
+	return true;
+    }
+
+    public boolean isDirty(K key) {
+	return dirty.contains(key);
+    }
+
+    /**
+     * Returns the number of values marked as dirty.
+     *
+     * @return the number of dirty values.
+     */
+    public int dirtyCount() {
+	return dirty.size();
+    }
+
+    /**
+     * Marks the value of a key as unchanged, typically because it is about to
+     * be saved.
+     *
+     * @param key the key.
+     *
+     * @return {@code true} if the value was dirty.
+     */
+    protected boolean clearDirty(K key) {
+	return dirty.remove(key);
+    }
+
+    /**
+     * Creates the underlying cache. Values it evicts by itself, for instance
+     * because of {@code maximumSize} or {@code expireAfterAccess}, are dropped
+     * even if they are dirty; caches whose values must be saved should evict
+     * them through a {@code removalListener} saving the evicted values for
+     * which {@link #isDirty(Object)} still returns {@code true}. The dirty flag
+     * of an evicted value is only cleared once its key is loaded again.
+     *
+     * @return a new cache.
+     */
     protected abstract LoadingCache<K, V> makeCache();
 
+    class StatsMXBean implements DataCacheMXBean {
+
+	@Override
+	public long getHitCount() {
+	    return getStats().getHitCount();
+	}
+
+	@Override
+	public long getMissCount() {
+	    return getStats().getMissCount();
+	}
+
+	@Override
+	public double getHitRate() {
+	    return getStats().getHitRate();
+	}
+
+	@Override
+	public long getLoadCount() {
+	    return getStats().getLoadCount();
+	}
+
+	@Override
+	public long getLoadExceptionCount() {
+	    return getStats().getLoadExceptionCount();
+	}
+
+	@Override
+	public double getAverageLoadPenalty() {
+	    return getStats().getAverageLoadPenalty();
+	}
+
+	@Override
+	public long getEvictionCount() {
+	    return getStats().getEvictionCount();
+	}
+
+	@Override
+	public long getSize() {
+	    return getStats().getSize();
+	}
+
+	@Override
+	public int getDirtyCount() {
+	    return getStats().getDirtyCount();
+	}
+    }
+
     /**
      * Called when an element is loaded in this {@code DataCache}. It is not
      * possible to cancel the load without manually invoking
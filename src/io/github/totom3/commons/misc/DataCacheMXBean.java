@@ -0,0 +1,29 @@
+package io.github.totom3.commons.misc;
+
+/**
+ * Management interface of a {@link DataCache}, registered with
+ * {@link DataCache#registerMBean(String)}. Every attribute reflects a fresh
+ * {@link DataCacheStats} snapshot.
+ *
+ * @author Totom3
+ */
+public interface DataCacheMXBean {
+
+    long getHitCount();
+
+    long getMissCount();
+
+    double getHitRate();
+
+    long getLoadCount();
+
+    long getLoadExceptionCount();
+
+    double getAverageLoadPenalty();
+
+    long getEvictionCount();
+
+    long getSize();
+
+    int getDirtyCount();
+}
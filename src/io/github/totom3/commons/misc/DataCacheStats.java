@@ -0,0 +1,73 @@
+package io.github.totom3.commons.misc;
+
+import com.google.common.cache.CacheStats;
+
+/**
+ * Immutable snapshot of the statistics of a {@link DataCache}. Hit, miss, load
+ * and eviction statistics come from the underlying Guava cache, and are only
+ * recorded if it was built with {@code recordStats()}.
+ *
+ * @author Totom3
+ */
+public class DataCacheStats {
+
+    private final CacheStats cacheStats;
+    private final long size;
+    private final int dirtyCount;
+
+    DataCacheStats(CacheStats cacheStats, long size, int dirtyCount) {
+	this.cacheStats = cacheStats;
+	this.size = size;
+	this.dirtyCount = dirtyCount;
+    }
+
+    public CacheStats getCacheStats() {
+	return cacheStats;
+    }
+
+    public long getHitCount() {
+	return cacheStats.hitCount();
+    }
+
+    public long getMissCount() {
+	return cacheStats.missCount();
+    }
+
+    public double getHitRate() {
+	return cacheStats.hitRate();
+    }
+
+    public long getLoadCount() {
+	return cacheStats.loadCount();
+    }
+
+    public long getLoadExceptionCount() {
+	return cacheStats.loadExceptionCount();
+    }
+
+    /**
+     * Returns the average time spent loading a value, in nanoseconds.
+     *
+     * @return the average load time.
+     */
+    public double getAverageLoadPenalty() {
+	return cacheStats.averageLoadPenalty();
+    }
+
+    public long getEvictionCount() {
+	return cacheStats.evictionCount();
+    }
+
+    public long getSize() {
+	return size;
+    }
+
+    public int getDirtyCount() {
+	return dirtyCount;
+    }
+
+    @Override
+    public String toString() {
+	return "DataCacheStats{" + "cacheStats=" + cacheStats + ", size=" + size + ", dirtyCount=" + dirtyCount + '}';
+    }
+}
@@ -1,11 +1,42 @@
 package io.github.totom3.commons.misc;
 
+import static com.google.common.base.Preconditions.checkNotNull;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javax.management.StandardMBean;
 
 /**
+ * A {@code DataCache} whose values can be saved, either synchronously or
+ * through a write-behind queue drained by a dedicated thread.
+ * <p>
+ * Asynchronous saves of the same key are coalesced: until the save thread
+ * picks it up, a queued save is only updated with the latest value, and every
+ * caller gets the same future. The queue is drained in batches, one executor
+ * task saving everything queued at that time. A value which fails to save is
+ * marked as dirty again; if its key was unloaded in the meantime, the value is
+ * kept aside instead, and retried by the next batch or {@link #saveAll()}.
+ * Values are saved one at a time, so that the saves of a key land in the order
+ * they were requested: {@link #saveAll(boolean)} waits for the running
+ * asynchronous save, and takes over the queued one of every key it saves. Call
+ * {@link #shutdown(long, TimeUnit)} when disabling the cache, so that queued
+ * saves are given a chance to complete.
  *
  * @author Totom3
  * @param <K>
@@ -15,6 +46,24 @@ public abstract class SaveableDataCache<K, V> extends DataCache<K, V> {
 
     private static final Logger LOGGER = Logger.getLogger(SaveableDataCache.class.getName());
 
+    private final ConcurrentMap<K, PendingSave<V>> pendingSaves = new ConcurrentHashMap<>();
+    private final ConcurrentMap<K, V> failedSaves = new ConcurrentHashMap<>();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final AtomicLong savedCount = new AtomicLong();
+    private final AtomicLong skippedCount = new AtomicLong();
+    private final AtomicLong failedSaveCount = new AtomicLong();
+    private final AtomicLong totalSaveNanos = new AtomicLong();
+    private final AtomicLongArray saveLatencies = new AtomicLongArray(SaveableDataCacheStats.LATENCY_BUCKETS);
+    private volatile CompletableFuture<Void> inFlight = CompletableFuture.completedFuture(null);
+    private ExecutorService saveExecutor;
+    private boolean saveShutdown;
+
+    /**
+     * Held while saving a value, so that a value being saved asynchronously
+     * is not written after a newer one saved by {@code saveAll}.
+     */
+    private final Object saveLock = new Object();
+
     public boolean trySave(V element) {
 	try {
 	    save(element);
@@ -27,17 +76,448 @@ public abstract class SaveableDataCache<K, V> extends DataCache<K, V> {
 
     public abstract void save(V element) throws IOException;
 
+    /**
+     * Saves every dirty value, as by {@code saveAll(false)}.
+     */
     public void saveAll() {
+	saveAll(false);
+    }
+
+    /**
+     * Saves cached values. A value is marked as clean before being saved, and
+     * marked as dirty again if saving it fails. Values of unloaded keys which
+     * failed to save asynchronously are retried first. A queued asynchronous
+     * save of a key saved here is dropped, and its future completed along
+     * with this save.
+     *
+     * @param force {@code true} to save every value, {@code false} to only
+     *              save dirty ones.
+     */
+    public void saveAll(boolean force) {
+	for (K key : failedSaves.keySet()) {
+	    synchronized (saveLock) {
+		// A newer value may have been queued meanwhile
+		if (pendingSaves.containsKey(key)) {
+		    continue;
+		}
+		V value = failedSaves.remove(key);
+		if (value == null) {
+		    continue;
+		}
+
+		try {
+		    recordedSave(value);
+		} catch (IOException ex) {
+		    failedSaves.putIfAbsent(key, value);
+		    LOGGER.log(Level.SEVERE, "Could not save value from entry [key=" + key + ", value=" + value + "]", ex);
+		}
+	    }
+	}
+
+	for (K key : all().keySet()) {
+	    if (!clearDirty(key) && !force) {
+		skippedCount.incrementAndGet();
+		continue;
+	    }
+
+	    V value;
+	    PendingSave<V> queued;
+	    IOException failure = null;
+	    synchronized (saveLock) {
+		// Read once clean, so that no newer value is left unsaved
+		value = getLoaded(key);
+		if (value == null) {
+		    continue;
+		}
+		queued = pendingSaves.remove(key);
+
+		try {
+		    recordedSave(value);
+		} catch (IOException ex) {
+		    failure = ex;
+		    markDirty(key);
+		}
+	    }
+
+	    if (failure != null) {
+		LOGGER.log(Level.SEVERE, "Could not save value from entry [key=" + key + ", value=" + value + "]", failure);
+	    }
+	    if (queued != null) {
+		if (failure == null) {
+		    queued.future.complete(null);
+		} else {
+		    queued.future.completeExceptionally(failure);
+		}
+	    }
+	}
+    }
+
+    /**
+     * Returns the number of values saved by {@link #saveAll(boolean)} and
+     * asynchronous saves so far.
+     *
+     * @return the number of values saved.
+     */
+    public long getSavedCount() {
+	return savedCount.get();
+    }
+
+    /**
+     * Returns the number of values {@link #saveAll(boolean)} and
+     * {@link #saveAllAsync()} skipped so far because they were not dirty.
+     *
+     * @return the number of saves skipped.
+     */
+    public long getSkippedCount() {
+	return skippedCount.get();
+    }
+
+    /**
+     * Returns a snapshot of the statistics of this cache, including the count
+     * and latency of the saves made by {@link #saveAll(boolean)} and
+     * asynchronous saves.
+     *
+     * @return the current statistics.
+     */
+    @Override
+    public SaveableDataCacheStats getStats() {
+	long[] latencies = new long[saveLatencies.length()];
+	for (int i = 0; i < latencies.length; ++i) {
+	    latencies[i] = saveLatencies.get(i);
+	}
+
+	return new SaveableDataCacheStats(cache.stats(), cache.size(), dirtyCount(), savedCount.get(), skippedCount.get(),
+		failedSaveCount.get(), pendingSaves.size(), totalSaveNanos.get(), latencies);
+    }
+
+    @Override
+    StandardMBean createMBean() {
+	return new StandardMBean(new SaveStatsMXBean(), SaveableDataCacheMXBean.class, true);
+    }
+
+    private void recordedSave(V value) throws IOException {
+	long start = System.nanoTime();
+	boolean saved = false;
+	try {
+	    save(value);
+	    saved = true;
+	} finally {
+	    long nanos = System.nanoTime() - start;
+	    totalSaveNanos.addAndGet(nanos);
+	    saveLatencies.incrementAndGet(SaveableDataCacheStats.latencyBucket(nanos));
+	    (saved ? savedCount : failedSaveCount).incrementAndGet();
+	}
+    }
+
+    // --------------------------[ Asynchronous saves ]--------------------------
+    /**
+     * Queues the currently cached value of a key to be saved on the save
+     * thread.
+     *
+     * @param key the key whose value to save.
+     *
+     * @return a future completed once the value is saved, or completed
+     *         exceptionally if saving failed. If no value is cached for
+     *         {@code key}, the future is already completed.
+     */
+    public CompletableFuture<Void> saveAsync(K key) {
+	V value = getLoaded(key);
+	if (value == null) {
+	    return CompletableFuture.completedFuture(null);
+	}
+	return saveAsync(key, value);
+    }
+
+    /**
+     * Queues a value to be saved on the save thread, and marks it as clean. If
+     * a save of the same key is already queued and not started yet, it is
+     * updated to save {@code value} instead, and its future is returned. If
+     * saving fails, the value is marked as dirty again, or kept aside to be
+     * retried if {@code key} was unloaded meanwhile.
+     *
+     * @param key   the key of the value.
+     * @param value the value to save.
+     *
+     * @return a future completed once the value is saved, or completed
+     *         exceptionally if saving failed. Once the cache is shut down, the
+     *         future fails with a {@code RejectedExecutionException}, and the
+     *         value is left dirty.
+     */
+    public CompletableFuture<Void> saveAsync(K key, V value) {
+	checkNotNull(key, "Key cannot be null");
+	checkNotNull(value, "Value cannot be null");
+
+	if (isSaveShutdown()) {
+	    return rejected();
+	}
+	clearDirty(key);
+	failedSaves.remove(key);
+	PendingSave<V> save = pendingSaves.compute(key, (k, existing) -> {
+	    if (existing == null) {
+		return new PendingSave<>(value);
+	    }
+	    existing.value = value;
+	    return existing;
+	});
+
+	scheduleDrain();
+	return save.future;
+    }
+
+    /**
+     * Queues every dirty value to be saved on the save thread, along with the
+     * values kept aside after failing to save.
+     *
+     * @return a future completed once every value is saved, or completed
+     *         exceptionally if any could not be saved.
+     */
+    public CompletableFuture<Void> saveAllAsync() {
+	if (isSaveShutdown()) {
+	    return rejected();
+	}
+	requeueFailedSaves();
+	List<CompletableFuture<Void>> futures = new ArrayList<>();
 	for (Entry<K, V> entry : all().entrySet()) {
-	    K key = entry.getKey();
-	    V value = entry.getValue();
+	    if (isDirty(entry.getKey())) {
+		futures.add(saveAsync(entry.getKey(), entry.getValue()));
+	    } else {
+		skippedCount.incrementAndGet();
+	    }
+	}
+	if (futures.isEmpty() && !pendingSaves.isEmpty()) {
+	    scheduleDrain();
+	}
+	return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()]));
+    }
+
+    /**
+     * Returns the number of keys queued for saving and not picked up by the
+     * save thread yet.
+     *
+     * @return the number of queued saves.
+     */
+    public int pendingSaves() {
+	return pendingSaves.size();
+    }
+
+    /**
+     * Waits for the saves queued so far, including the ones currently running,
+     * to complete, for at most the specified time.
+     *
+     * @param timeout the maximum time to wait.
+     * @param unit    the unit of {@code timeout}.
+     *
+     * @return {@code true} if every save completed (successfully or not) in
+     *         time, {@code false} otherwise.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public boolean flush(long timeout, TimeUnit unit) throws InterruptedException {
+	// Queue first: a save leaving the queue afterwards is seen as in flight
+	List<CompletableFuture<Void>> futures = new ArrayList<>();
+	for (PendingSave<V> save : pendingSaves.values()) {
+	    futures.add(save.future);
+	}
+	futures.add(inFlight);
+
+	try {
+	    CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()])).get(timeout, unit);
+	} catch (ExecutionException ex) {
+	    // Failures were already logged
+	} catch (TimeoutException ex) {
+	    return false;
+	}
+	return true;
+    }
+
+    /**
+     * Flushes the queued saves, as by {@link #flush(long, TimeUnit)}, and then
+     * stops the save thread and the load executor. Saves queued afterwards fail
+     * with a {@code RejectedExecutionException}, leaving their values to
+     * {@link #saveAll()}.
+     *
+     * @param timeout the maximum time to wait for queued saves.
+     * @param unit    the unit of {@code timeout}.
+     *
+     * @return {@code true} if every queued save completed in time,
+     *         {@code false} otherwise.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+	long deadline = System.nanoTime() + unit.toNanos(timeout);
+	boolean flushed = flush(timeout, unit);
+
+	ExecutorService executor;
+	synchronized (this) {
+	    saveShutdown = true;
+	    executor = saveExecutor;
+	}
+	shutdownLoads();
+	if (executor == null) {
+	    return flushed;
+	}
+	executor.shutdown();
+	return executor.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS) && flushed;
+    }
 
-	    try {
-		save(value);
-	    } catch (IOException ex) {
-		new IOException("Could not save value from entry [key=" + key + ", value=" + value + "]", ex).printStackTrace();
+    /**
+     * Creates the executor asynchronous saves are run on. It is created when
+     * first needed. The default implementation creates a single daemon thread.
+     *
+     * @return a new executor.
+     */
+    protected ExecutorService makeSaveExecutor() {
+	return Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+		.setNameFormat(getClass().getSimpleName() + " Save Thread")
+		.setDaemon(true)
+		.build());
+    }
+
+    private synchronized ExecutorService saveExecutor() {
+	if (saveExecutor == null) {
+	    if (saveShutdown) {
+		throw new RejectedExecutionException("Save executor was shut down");
 	    }
+	    saveExecutor = makeSaveExecutor();
 	}
+	return saveExecutor;
+    }
+
+    private synchronized boolean isSaveShutdown() {
+	return saveShutdown;
     }
 
+    private static CompletableFuture<Void> rejected() {
+	CompletableFuture<Void> future = new CompletableFuture<>();
+	future.completeExceptionally(new RejectedExecutionException("Save executor was shut down"));
+	return future;
+    }
+
+    private void scheduleDrain() {
+	if (!draining.compareAndSet(false, true)) {
+	    return;
+	}
+
+	try {
+	    saveExecutor().execute(this::drain);
+	} catch (RejectedExecutionException ex) {
+	    draining.set(false);
+	    // Shut down meanwhile: leave the values to saveAll()
+	    for (K key : pendingSaves.keySet()) {
+		PendingSave<V> save = pendingSaves.remove(key);
+		if (save != null) {
+		    if (!markDirty(key)) {
+			failedSaves.putIfAbsent(key, save.value);
+		    }
+		    save.future.completeExceptionally(ex);
+		}
+	    }
+	}
+    }
+
+    private void drain() {
+	try {
+	    requeueFailedSaves();
+	    for (K key : pendingSaves.keySet()) {
+		PendingSave<V> save = pendingSaves.get(key);
+		if (save == null) {
+		    continue;
+		}
+
+		Exception failure = null;
+		synchronized (saveLock) {
+		    // In flight before leaving the queue, so that flush() sees it
+		    inFlight = save.future;
+		    if (!pendingSaves.remove(key, save)) {
+			continue;
+		    }
+
+		    try {
+			recordedSave(save.value);
+		    } catch (IOException | RuntimeException ex) {
+			failure = ex;
+			if (!markDirty(key) && !pendingSaves.containsKey(key)) {
+			    failedSaves.putIfAbsent(key, save.value);
+			}
+		    }
+		}
+
+		if (failure == null) {
+		    save.future.complete(null);
+		} else {
+		    LOGGER.log(Level.SEVERE, "Could not save value from entry [key=" + key + ", value=" + save.value + "]", failure);
+		    save.future.completeExceptionally(failure);
+		}
+	    }
+	} finally {
+	    draining.set(false);
+	}
+
+	// Saves queued while the flag was still set
+	if (!pendingSaves.isEmpty()) {
+	    scheduleDrain();
+	}
+    }
+
+    /**
+     * Queues the values kept aside after failing to save again, unless a newer
+     * value of their key is queued.
+     */
+    private void requeueFailedSaves() {
+	for (K key : failedSaves.keySet()) {
+	    V value = failedSaves.remove(key);
+	    if (value != null) {
+		pendingSaves.putIfAbsent(key, new PendingSave<>(value));
+	    }
+	}
+    }
+
+    private class SaveStatsMXBean extends StatsMXBean implements SaveableDataCacheMXBean {
+
+	@Override
+	public long getSavedCount() {
+	    return getStats().getSavedCount();
+	}
+
+	@Override
+	public long getSkippedCount() {
+	    return getStats().getSkippedCount();
+	}
+
+	@Override
+	public long getFailedSaveCount() {
+	    return getStats().getFailedSaveCount();
+	}
+
+	@Override
+	public int getPendingSaves() {
+	    return getStats().getPendingSaves();
+	}
+
+	@Override
+	public double getAverageSaveNanos() {
+	    return getStats().getAverageSaveNanos();
+	}
+
+	@Override
+	public long[] getSaveLatencyHistogram() {
+	    return getStats().getSaveLatencyHistogram();
+	}
+    }
+
+    private static final class PendingSave<V> {
+
+	private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+	/**
+	 * Only written while the entry is in the queue, under the lock of the
+	 * map, and read once it was removed from it.
+	 */
+	private V value;
+
+	PendingSave(V value) {
+	    this.value = value;
+	}
+    }
 }
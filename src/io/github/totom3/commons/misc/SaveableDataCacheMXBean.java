@@ -0,0 +1,23 @@
+package io.github.totom3.commons.misc;
+
+/**
+ * Management interface of a {@link SaveableDataCache}, adding save statistics
+ * to the ones of a {@link DataCacheMXBean}. Every attribute reflects a fresh
+ * {@link SaveableDataCacheStats} snapshot.
+ *
+ * @author Totom3
+ */
+public interface SaveableDataCacheMXBean extends DataCacheMXBean {
+
+    long getSavedCount();
+
+    long getSkippedCount();
+
+    long getFailedSaveCount();
+
+    int getPendingSaves();
+
+    double getAverageSaveNanos();
+
+    long[] getSaveLatencyHistogram();
+}
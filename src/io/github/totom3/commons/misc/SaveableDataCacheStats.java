@@ -0,0 +1,132 @@
+package io.github.totom3.commons.misc;
+
+import com.google.common.cache.CacheStats;
+import java.util.Arrays;
+
+/**
+ * Immutable snapshot of the statistics of a {@link SaveableDataCache}: the
+ * ones of a {@link DataCacheStats}, along with the count and latency of the
+ * saves made by {@link SaveableDataCache#saveAll(boolean)} and asynchronous
+ * saves, which are always recorded.
+ * <p>
+ * Save latencies are counted in power-of-two buckets: bucket {@code 0} counts
+ * saves taking less than 1 microsecond, and bucket {@code i > 0} saves taking
+ * from 2<sup>i-1</sup> (inclusive) to 2<sup>i</sup> (exclusive)
+ * microseconds. The last bucket also counts every longer save.
+ *
+ * @author Totom3
+ */
+public final class SaveableDataCacheStats extends DataCacheStats {
+
+    /**
+     * Number of save latency buckets; the last one starts at about 4 seconds.
+     */
+    public static final int LATENCY_BUCKETS = 24;
+
+    private final long savedCount;
+    private final long skippedCount;
+    private final long failedSaveCount;
+    private final int pendingSaves;
+    private final long totalSaveNanos;
+    private final long[] saveLatencies;
+
+    SaveableDataCacheStats(CacheStats cacheStats, long size, int dirtyCount, long savedCount, long skippedCount, long failedSaveCount, int pendingSaves, long totalSaveNanos, long[] saveLatencies) {
+	super(cacheStats, size, dirtyCount);
+	this.savedCount = savedCount;
+	this.skippedCount = skippedCount;
+	this.failedSaveCount = failedSaveCount;
+	this.pendingSaves = pendingSaves;
+	this.totalSaveNanos = totalSaveNanos;
+	this.saveLatencies = saveLatencies;
+    }
+
+    /**
+     * Returns the bucket a save latency is counted in.
+     *
+     * @param nanos the latency, in nanoseconds.
+     *
+     * @return the index of the bucket.
+     */
+    static int latencyBucket(long nanos) {
+	long micros = nanos / 1000;
+	return Math.min(64 - Long.numberOfLeadingZeros(micros), LATENCY_BUCKETS - 1);
+    }
+
+    public long getSavedCount() {
+	return savedCount;
+    }
+
+    public long getSkippedCount() {
+	return skippedCount;
+    }
+
+    public long getFailedSaveCount() {
+	return failedSaveCount;
+    }
+
+    public int getPendingSaves() {
+	return pendingSaves;
+    }
+
+    /**
+     * Returns the average time spent saving a value, successfully or not, in
+     * nanoseconds.
+     *
+     * @return the average save time, or {@code 0} if nothing was saved.
+     */
+    public double getAverageSaveNanos() {
+	long saves = savedCount + failedSaveCount;
+	return (saves == 0) ? 0 : (double) totalSaveNanos / saves;
+    }
+
+    /**
+     * Returns the save latency histogram.
+     *
+     * @return a copy of the bucket counts.
+     */
+    public long[] getSaveLatencyHistogram() {
+	return saveLatencies.clone();
+    }
+
+    /**
+     * Returns an upper bound of the specified save latency percentile, derived
+     * from the histogram.
+     *
+     * @param percentile the percentile, from {@code 0} to {@code 100}.
+     *
+     * @return the exclusive upper bound of the bucket holding the percentile,
+     *         in microseconds, {@code Long.MAX_VALUE} if it falls in the last
+     *         bucket, or {@code 0} if nothing was saved.
+     */
+    public long getSaveLatencyPercentile(double percentile) {
+	if (percentile < 0 || percentile > 100) {
+	    throw new IllegalArgumentException("Percentile must be between 0 and 100: " + percentile);
+	}
+
+	long total = 0;
+	for (long count : saveLatencies) {
+	    total += count;
+	}
+	if (total == 0) {
+	    return 0;
+	}
+
+	long rank = (long) Math.ceil(total * percentile / 100);
+	long seen = 0;
+	for (int i = 0; i < saveLatencies.length - 1; ++i) {
+	    seen += saveLatencies[i];
+	    if (seen >= rank) {
+		return 1L << i;
+	    }
+	}
+	return Long.MAX_VALUE;
+    }
+
+    @Override
+    public String toString() {
+	return "SaveableDataCacheStats{" + "cacheStats=" + getCacheStats() + ", size=" + getSize() + ", dirtyCount=" + getDirtyCount()
+		+ ", savedCount=" + savedCount + ", skippedCount=" + skippedCount + ", failedSaveCount=" + failedSaveCount
+		+ ", pendingSaves=" + pendingSaves + ", totalSaveNanos=" + totalSaveNanos
+		+ ", saveLatencies=" + Arrays.toString(saveLatencies) + '}';
+    }
+}
@@ -51,7 +51,8 @@ public class BinaryIONGTest {
 	    new String[]{"Another string!"},
 	    new String[]{"Third string!"},
 	    new String[]{null},
-	    new String[]{""}
+	    new String[]{""},
+	    new String[]{"Non-ASCII: \u00e9\u00e8\u00e0 \u65e5\u672c\u8a9e \uD83D\uDE00"}
 	};
     }
 
@@ -190,6 +191,55 @@ public class BinaryIONGTest {
 	assertEquals(map2, map);
     }
 
+    @Test
+    public void testGeneratedAdapter() throws Exception {
+	System.out.println("TestGeneratedAdapter");
+	BinaryIO.get().registerGeneratedAdapter(Generated.class);
+	Generated obj = new Generated(7, "Totom3", Arrays.asList("a", "b"), TheEnum.C, 2.5);
+
+	BufferSerializationContext out = new BufferSerializationContext();
+	out.writeObject(obj);
+	Generated read = new BufferDeserializationContext(out.toReadableBuffer()).readObject(Generated.class);
+	assertEquals(read.id, 7);
+	assertEquals(read.name, "Totom3");
+	assertEquals(read.tags, Arrays.asList("a", "b"));
+	assertEquals(read.kind, TheEnum.C);
+	assertEquals(read.score, 2.5);
+
+	// Version 1 has no score; version 2 still reads it
+	VersioningBinaryAdapter<Generated> versioned = VersioningBinaryAdapter.<Generated>builder()
+		.addGeneratedAdapter(1, Generated.class)
+		.addGeneratedAdapter(2, Generated.class)
+		.build(1);
+	obj.tags = null;
+	out = new BufferSerializationContext();
+	versioned.write(obj, out);
+	read = versioned.read(new BufferDeserializationContext(out.toReadableBuffer()));
+	assertEquals(read.name, "Totom3");
+	assertNull(read.tags);
+	assertEquals(read.score, -1.0);
+    }
+
+    @Test
+    public void testGeneratedAdapterReresolves() throws Exception {
+	System.out.println("TestGeneratedAdapterReresolves");
+	BinaryIO io = BinaryIO.get();
+	io.registerAdapter(Box.class, new BoxAdapter(0));
+	GeneratedAdapter<Boxed> adapter = GeneratedAdapter.of(Boxed.class);
+	Boxed obj = new Boxed();
+	obj.box = new Box(5);
+
+	BufferSerializationContext out = new BufferSerializationContext();
+	adapter.write(obj, out);
+	assertEquals(adapter.read(new BufferDeserializationContext(out.toReadableBuffer())).box.value, 5);
+
+	// Registered after the field adapter was first resolved
+	io.registerAdapter(Box.class, new BoxAdapter(100));
+	out = new BufferSerializationContext();
+	adapter.write(obj, out);
+	assertEquals(adapter.read(new BufferDeserializationContext(out.toReadableBuffer())).box.value, 205);
+    }
+
     private static class Adapter<T> implements BinaryAdapter<T> {
 
 	private final String name;
@@ -249,6 +299,66 @@ public class BinaryIONGTest {
 
     }
 
+    private static class Box {
+
+	private final int value;
+
+	Box(int value) {
+	    this.value = value;
+	}
+    }
+
+    private static class Boxed {
+
+	@BinaryField(0)
+	private Box box;
+    }
+
+    private static class BoxAdapter implements BinaryAdapter<Box> {
+
+	private final int offset;
+
+	BoxAdapter(int offset) {
+	    this.offset = offset;
+	}
+
+	@Override
+	public Box read(DeserializationContext context) throws IOException {
+	    return new Box(context.readInt() + offset);
+	}
+
+	@Override
+	public void write(Box box, SerializationContext context) throws IOException {
+	    context.writeInt(box.value + offset);
+	}
+    }
+
+    private static class Generated {
+
+	@BinaryField(0)
+	private final int id;
+	@BinaryField(1)
+	private String name;
+	@BinaryField(3)
+	private List<String> tags;
+	@BinaryField(2)
+	private TheEnum kind;
+	@BinaryField(value = 4, since = 2)
+	private double score = -1;
+
+	private Generated() {
+	    this.id = 0;
+	}
+
+	Generated(int id, String name, List<String> tags, TheEnum kind, double score) {
+	    this.id = id;
+	    this.name = name;
+	    this.tags = tags;
+	    this.kind = kind;
+	    this.score = score;
+	}
+    }
+
     public static enum TheEnum {
 
 	A,
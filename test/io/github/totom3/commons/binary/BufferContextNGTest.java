@@ -0,0 +1,720 @@
+package io.github.totom3.commons.binary;
+
+import com.google.common.collect.ImmutableMap;
+import io.github.totom3.commons.misc.DataBank;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author Totom3
+ */
+public class BufferContextNGTest {
+
+    @DataProvider
+    public static Object[][] buffers() {
+	return new Object[][]{
+	    new Object[]{ByteBuffer.allocate(1)},
+	    new Object[]{ByteBuffer.allocateDirect(1)},
+	    new Object[]{ByteBuffer.allocate(1).order(ByteOrder.LITTLE_ENDIAN)},
+	    new Object[]{ByteBuffer.allocateDirect(1024).order(ByteOrder.LITTLE_ENDIAN)}
+	};
+    }
+
+    static {
+	BinaryIO.get().registerAdapter(Node.class, new NodeAdapter());
+    }
+
+    public BufferContextNGTest() {
+    }
+
+    @Test(dataProvider = "buffers")
+    public void testWriteAndRead(ByteBuffer buffer) throws Exception {
+	System.out.println("TestWriteAndRead " + buffer);
+	List<String> list = Arrays.asList("First", "Second", "Third");
+	Map<String, Integer> map = ImmutableMap.of("A", 1, "B", 2);
+
+	BufferSerializationContext out = new BufferSerializationContext(buffer);
+	out.writeByte(-5);
+	out.writeShort(1234);
+	out.writeChar('x');
+	out.writeInt(-123456789);
+	out.writeLong(Long.MIN_VALUE);
+	out.writeFloat(1.5F);
+	out.writeDouble(-2.25);
+	out.writeBoolean(true);
+	out.writeString("Some string");
+	out.writeString(null);
+	out.writeCollection(list);
+	out.writeMap(map);
+	out.writeEnum(BinaryIONGTest.TheEnum.C);
+
+	assertEquals(out.order(), buffer.order());
+
+	BufferDeserializationContext in = new BufferDeserializationContext(out.toReadableBuffer());
+	assertEquals(in.readByte(), -5);
+	assertEquals(in.readShort(), 1234);
+	assertEquals(in.readChar(), 'x');
+	assertEquals(in.readInt(), -123456789);
+	assertEquals(in.readLong(), Long.MIN_VALUE);
+	assertEquals(in.readFloat(), 1.5F);
+	assertEquals(in.readDouble(), -2.25);
+	assertEquals(in.readBoolean(), true);
+	assertEquals(in.readString(), "Some string");
+	assertEquals(in.readString(), null);
+	assertEquals(in.readList(String.class), list);
+	assertEquals(in.readMap(String.class, Integer.class), map);
+	assertEquals(in.readEnum(BinaryIONGTest.TheEnum.class), BinaryIONGTest.TheEnum.C);
+	assertEquals(in.remaining(), 0);
+    }
+
+    @Test(dataProvider = "buffers")
+    public void testPrimitiveArrays(ByteBuffer buffer) throws Exception {
+	System.out.println("TestPrimitiveArrays " + buffer);
+	int[] ints = new int[5000];
+	double[] doubles = new double[3000];
+	for (int i = 0; i < ints.length; ++i) {
+	    ints[i] = i * 31 - 1000;
+	}
+	for (int i = 0; i < doubles.length; ++i) {
+	    doubles[i] = i / 7.0;
+	}
+	Object[] arrays = {
+	    new byte[]{1, -2, 3}, new short[]{-1, 300}, new char[]{'a', '\u00e9'}, ints,
+	    new long[]{Long.MAX_VALUE, -1}, new float[]{1.5F, -0F}, doubles, new boolean[]{true, false, true}
+	};
+
+	// Through ByteBuffer views
+	BufferSerializationContext out = new BufferSerializationContext(buffer);
+	for (Object arr : arrays) {
+	    out.writeObject(arr);
+	}
+	out.writeIntArray(null);
+
+	BufferDeserializationContext in = new BufferDeserializationContext(out.toReadableBuffer());
+	for (Object arr : arrays) {
+	    assertTrue(Objects.deepEquals(in.readObject(arr.getClass()), arr));
+	}
+	assertEquals(in.readIntArray(), null);
+	assertEquals(in.remaining(), 0);
+
+	// Through streams, using the scratch buffer
+	ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	SerializationContext streamOut = new SerializationContext(new DataOutputStream(bytes));
+	for (Object arr : arrays) {
+	    streamOut.writeObject(arr);
+	}
+
+	DeserializationContext streamIn = new DeserializationContext(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+	for (Object arr : arrays) {
+	    assertTrue(Objects.deepEquals(streamIn.readObject(arr.getClass()), arr));
+	}
+    }
+
+    @Test
+    public void testHomogeneousCollections() throws Exception {
+	System.out.println("TestHomogeneousCollections");
+	List<UUID> uuids = Arrays.asList(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID());
+	List<Object> same = Arrays.<Object>asList("A", "B", "C");
+	List<Object> mixed = Arrays.<Object>asList("A", 1, 2L, UUID.randomUUID());
+
+	BufferSerializationContext out = new BufferSerializationContext();
+	out.writeCollection(uuids, UUID.class);
+	out.writeCollection(new HashSet<>(uuids), UUID.class);
+	out.writeObject(same);
+	out.writeObject(mixed);
+
+	BufferDeserializationContext in = new BufferDeserializationContext(out.toReadableBuffer());
+	assertEquals(in.readList(UUID.class), uuids);
+	assertEquals(in.readSet(UUID.class), new HashSet<>(uuids));
+	assertEquals(in.readObject(List.class), same);
+	assertEquals(in.readObject(List.class), mixed);
+	assertEquals(in.remaining(), 0);
+    }
+
+    @Test(expectedExceptions = SerializingException.class)
+    public void testHomogeneousCollectionWrongType() throws Exception {
+	System.out.println("TestHomogeneousCollectionWrongType");
+	List strings = Arrays.<Object>asList("A", 1);
+	new BufferSerializationContext().writeCollection(strings, String.class);
+    }
+
+    @Test(dataProvider = "buffers")
+    public void testCompression(ByteBuffer buffer) throws Exception {
+	System.out.println("TestCompression " + buffer);
+	BufferSerializationContext out = new BufferSerializationContext(buffer);
+	for (int i = 0; i < 1000; ++i) {
+	    out.writeString("Diamond Sword");
+	    out.writeInt(i);
+	}
+
+	for (BinaryCompression compression : BinaryCompression.values()) {
+	    ByteBuffer compressed = compression.compress(out.toReadableBuffer());
+	    ByteBuffer decompressed = compression.decompress(compressed);
+	    assertEquals(decompressed, out.toReadableBuffer());
+	}
+	assertTrue(BinaryCompression.DEFLATE.compress(out.toReadableBuffer()).remaining() < out.position() / 2);
+
+	ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	try (DataOutputStream stream = new DataOutputStream(BinaryCompression.DEFLATE.compress(bytes))) {
+	    stream.write(out.toByteArray());
+	}
+	byte[] read = new byte[out.position()];
+	new DataInputStream(BinaryCompression.DEFLATE.decompress(new ByteArrayInputStream(bytes.toByteArray()))).readFully(read);
+	assertEquals(read, out.toByteArray());
+    }
+
+    @Test(expectedExceptions = DeserializingException.class)
+    public void testTruncatedCompression() throws Exception {
+	System.out.println("TestTruncatedCompression");
+	ByteBuffer compressed = BinaryCompression.DEFLATE.compress(ByteBuffer.wrap(new byte[4096]));
+	compressed.limit(compressed.limit() / 2);
+	BinaryCompression.DEFLATE.decompress(compressed);
+    }
+
+    @Test(expectedExceptions = DeserializingException.class)
+    public void testCorruptCompressedLength() throws Exception {
+	System.out.println("TestCorruptCompressedLength");
+	ByteBuffer compressed = BinaryCompression.DEFLATE.compress(ByteBuffer.wrap(new byte[4096]));
+	compressed.putInt(0, Integer.MAX_VALUE);
+	BinaryCompression.DEFLATE.decompress(compressed);
+    }
+
+    @Test
+    public void testHighlyCompressible() throws Exception {
+	System.out.println("TestHighlyCompressible");
+	byte[] zeros = new byte[1 << 22];
+	ByteBuffer compressed = BinaryCompression.DEFLATE.compress(ByteBuffer.wrap(zeros));
+	ByteBuffer decompressed = BinaryCompression.DEFLATE.decompress(compressed);
+	assertEquals(decompressed.remaining(), zeros.length);
+	assertEquals(decompressed, ByteBuffer.wrap(zeros));
+    }
+
+    @Test
+    public void testCompressedFile() throws Exception {
+	System.out.println("TestCompressedFile");
+	List<String> list = Arrays.asList("First", "Second", "Third");
+	Path file = Files.createTempFile("binary", ".dat");
+	try {
+	    BinaryFiles.write(file, list, BinaryFeature.DEFLATE, BinaryFeature.VARINTS);
+
+	    BufferDeserializationContext in = BinaryFiles.open(file);
+	    assertTrue(in.isEnabled(BinaryFeature.DEFLATE));
+	    assertTrue(in.isEnabled(BinaryFeature.VARINTS));
+	    assertEquals(in.readObject(List.class), list);
+	    assertEquals(in.remaining(), 0);
+	} finally {
+	    Files.delete(file);
+	}
+    }
+
+    @Test
+    public void testFilePermissions() throws Exception {
+	System.out.println("TestFilePermissions");
+	Path dir = Files.createTempDirectory("binary");
+	Path plain = dir.resolve("plain.dat");
+	Path file = dir.resolve("file.dat");
+	try {
+	    Files.newOutputStream(plain).close();
+	    Set<PosixFilePermission> defaults;
+	    try {
+		defaults = Files.getPosixFilePermissions(plain);
+	    } catch (UnsupportedOperationException ex) {
+		return;
+	    }
+
+	    // New files get the default permissions, not owner-only ones
+	    BinaryFiles.write(file, "First");
+	    assertEquals(Files.getPosixFilePermissions(file), defaults);
+
+	    // Replaced files keep theirs
+	    Set<PosixFilePermission> custom = PosixFilePermissions.fromString("rw-rw----");
+	    Files.setPosixFilePermissions(file, custom);
+	    BinaryFiles.write(file, "Second");
+	    assertEquals(Files.getPosixFilePermissions(file), custom);
+	    assertEquals(BinaryFiles.open(file).readObject(String.class), "Second");
+
+	    try (Stream<Path> files = Files.list(dir)) {
+		assertEquals(files.count(), 2L);
+	    }
+	} finally {
+	    Files.deleteIfExists(plain);
+	    Files.deleteIfExists(file);
+	    Files.delete(dir);
+	}
+    }
+
+    @Test
+    public void testDataBankBulk() throws Exception {
+	System.out.println("TestDataBankBulk");
+	DataBankAdapter<String, DataBank<String>> adapter = new DataBankAdapter<String, DataBank<String>>() {
+
+	    @Override
+	    protected DataBank<String> supply() {
+		return new DataBank<>();
+	    }
+
+	    @Override
+	    protected String readElement(DeserializationContext context) throws IOException {
+		return context.readString();
+	    }
+
+	    @Override
+	    protected void writeElement(String obj, SerializationContext context) throws IOException {
+		context.writeString(obj);
+	    }
+	};
+
+	DataBank<String> bank = new DataBank<>();
+	for (int i = 0; i < 100; ++i) {
+	    bank.getOrInsert("Value #" + i);
+	}
+	for (boolean varInts : new boolean[]{false, true}) {
+	    BufferSerializationContext out = new BufferSerializationContext();
+	    out.setEnabled(BinaryFeature.VARINTS, varInts);
+	    adapter.write(bank, out);
+	    int denseLength = out.position();
+
+	    bank.removeValue("Value #50");
+	    adapter.write(bank, out);
+	    assertTrue(out.position() - denseLength > denseLength, "Sparse banks should carry IDs");
+
+	    BufferDeserializationContext in = new BufferDeserializationContext(out.toReadableBuffer());
+	    in.setEnabled(BinaryFeature.VARINTS, varInts);
+	    DataBank<String> dense = adapter.read(in);
+	    DataBank<String> sparse = adapter.read(in);
+	    assertEquals(dense.size(), 100);
+	    assertEquals(sparse, bank);
+	    assertEquals(sparse.getOrInsert("New"), 101);
+	    bank.getOrInsert("Value #50");
+	}
+
+	// Legacy format: IDs and values, ended by 0
+	BufferSerializationContext out = new BufferSerializationContext();
+	out.writeShort(3);
+	out.writeString("Three");
+	out.writeShort(1);
+	out.writeString("One");
+	out.writeShort(0);
+	DataBank<String> legacy = adapter.read(new BufferDeserializationContext(out.toReadableBuffer()));
+	assertEquals(legacy.get((short) 3), "Three");
+	assertEquals(legacy.get((short) 1), "One");
+	assertEquals(legacy.size(), 2);
+
+	// ...which could use the now reserved ID -1
+	out = new BufferSerializationContext();
+	out.writeShort(1);
+	out.writeString("One");
+	out.writeShort(-1);
+	out.writeString("Last");
+	out.writeShort(0);
+	try {
+	    adapter.read(new BufferDeserializationContext(out.toReadableBuffer()));
+	    fail("Expected DeserializingException");
+	} catch (DeserializingException ex) {
+	}
+    }
+
+    @Test
+    public void testRecordFile() throws Exception {
+	System.out.println("TestRecordFile");
+	List<String> records = new ArrayList<>();
+	for (int i = 0; i < 100; ++i) {
+	    records.add("Record #" + (i % 10));
+	}
+
+	Path file = Files.createTempFile("records", ".dat");
+	ForkJoinPool pool = new ForkJoinPool(4);
+	try {
+	    BinaryRecords.write(file, records, BinaryFeature.VARINTS, BinaryFeature.STRING_REFERENCES);
+	    assertEquals(BinaryRecords.read(file, String.class, pool), records);
+
+	    BinaryRecords.write(file, Arrays.asList());
+	    assertEquals(BinaryRecords.read(file, String.class, pool), Arrays.asList());
+	} finally {
+	    pool.shutdown();
+	    Files.delete(file);
+	}
+    }
+
+    @Test
+    public void testLittleEndianFile() throws Exception {
+	System.out.println("TestLittleEndianFile");
+	Path file = Files.createTempFile("binary", ".dat");
+	try {
+	    for (boolean deflate : new boolean[]{false, true}) {
+		BufferSerializationContext out = new BufferSerializationContext(ByteBuffer.allocate(64).order(ByteOrder.LITTLE_ENDIAN));
+		out.setEnabled(BinaryFeature.DEFLATE, deflate);
+		out.writeInt(0x01020304);
+		out.writeString("Little");
+		BinaryFiles.commit(file, out);
+
+		BufferDeserializationContext in = BinaryFiles.open(file);
+		assertEquals(in.order(), ByteOrder.LITTLE_ENDIAN);
+		assertEquals(in.isEnabled(BinaryFeature.DEFLATE), deflate);
+		assertEquals(in.readInt(), 0x01020304);
+		assertEquals(in.readString(), "Little");
+	    }
+	} finally {
+	    Files.delete(file);
+	}
+    }
+
+    @Test(dataProvider = "buffers")
+    public void testLazySections(ByteBuffer buffer) throws Exception {
+	System.out.println("TestLazySections " + buffer);
+	List<String> big = Arrays.asList("Diamond Sword", "Bow", "Diamond Sword");
+
+	BufferSerializationContext out = new BufferSerializationContext(buffer);
+	out.setEnabled(BinaryFeature.VARINTS, true);
+	out.setEnabled(BinaryFeature.STRING_REFERENCES, true);
+	out.writeString("Diamond Sword");
+	out.writeLazy(big);
+	out.writeLazy((Object) null);
+	out.writeString("Diamond Sword");
+
+	BufferDeserializationContext in = new BufferDeserializationContext(out.toReadableBuffer());
+	in.setFeatureMask(out.featureMask());
+	assertEquals(in.readString(), "Diamond Sword");
+	Lazy<List> lazy = in.readLazy(List.class);
+	assertEquals(in.readLazy(String.class).get(), null);
+	assertEquals(in.readString(), "Diamond Sword");
+	assertEquals(in.remaining(), 0);
+	assertTrue(!lazy.isDecoded());
+
+	// Copied as is while not decoded
+	BufferSerializationContext copy = new BufferSerializationContext(ByteBuffer.allocate(16).order(buffer.order()));
+	copy.setEnabled(BinaryFeature.VARINTS, true);
+	copy.setEnabled(BinaryFeature.STRING_REFERENCES, true);
+	copy.writeLazy(lazy);
+	assertTrue(!lazy.isDecoded());
+
+	assertEquals(lazy.get(), big);
+	assertTrue(lazy.isDecoded());
+
+	BufferDeserializationContext copyIn = new BufferDeserializationContext(copy.toReadableBuffer());
+	copyIn.setFeatureMask(out.featureMask());
+	assertEquals(copyIn.readLazy(List.class).get(), big);
+
+	// Through streams
+	ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	SerializationContext streamOut = new SerializationContext(new DataOutputStream(bytes));
+	streamOut.writeLazy(Lazy.of(big));
+	streamOut.writeInt(42);
+
+	DeserializationContext streamIn = new DeserializationContext(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+	Lazy<List> streamLazy = streamIn.readLazy(List.class);
+	assertEquals(streamIn.readInt(), 42);
+	assertEquals(streamLazy.get(), big);
+    }
+
+    @Test
+    public void testFraming() throws Exception {
+	System.out.println("TestFraming");
+	IDBinaryAdapter<Object> writer = IDBinaryAdapter.builder()
+		.addAdapter(0, String.class, new ObjectAdapters.StringAdapter())
+		.addAdapter(1, Integer.class, new ObjectAdapters.IntAdapter())
+		.withFraming(false)
+		.build();
+	IDBinaryAdapter<Object> reader = IDBinaryAdapter.builder()
+		.addAdapter(0, String.class, new ObjectAdapters.StringAdapter())
+		.withFraming(true)
+		.build();
+	VersioningBinaryAdapter<String> newVersion = VersioningBinaryAdapter.<String>builder()
+		.addAdapter(2, new ObjectAdapters.StringAdapter())
+		.withFraming(false)
+		.build(2);
+	VersioningBinaryAdapter<String> oldVersion = VersioningBinaryAdapter.<String>builder()
+		.addAdapter(1, new ObjectAdapters.StringAdapter())
+		.withFraming(true)
+		.build(1);
+
+	BufferSerializationContext out = new BufferSerializationContext();
+	out.setEnabled(BinaryFeature.VARINTS, true);
+	writer.write("First", out);
+	writer.write(42, out);
+	writer.write("Second", out);
+	newVersion.write("Newer", out);
+	out.writeInt(-7);
+
+	// Unknown IDs and versions are skipped
+	BufferDeserializationContext in = new BufferDeserializationContext(out.toReadableBuffer());
+	in.setEnabled(BinaryFeature.VARINTS, true);
+	assertEquals(reader.read(in), "First");
+	assertEquals(reader.read(in), null);
+	assertEquals(reader.read(in), "Second");
+	assertEquals(oldVersion.read(in), null);
+	assertEquals(in.readInt(), -7);
+
+	// Records can be scanned without being decoded
+	in = new BufferDeserializationContext(out.toReadableBuffer());
+	in.setEnabled(BinaryFeature.VARINTS, true);
+	for (int i = 0; i < 3; ++i) {
+	    writer.skip(in);
+	}
+	newVersion.skip(in);
+	assertEquals(in.readInt(), -7);
+	assertEquals(in.remaining(), 0);
+    }
+
+    @Test(expectedExceptions = DeserializingException.class)
+    public void testFramingUnknownID() throws Exception {
+	System.out.println("TestFramingUnknownID");
+	IDBinaryAdapter<Object> adapter = IDBinaryAdapter.builder()
+		.addAdapter(1, Integer.class, new ObjectAdapters.IntAdapter())
+		.withFraming(false)
+		.build();
+
+	BufferSerializationContext out = new BufferSerializationContext();
+	adapter.write(42, out);
+	BufferDeserializationContext in = new BufferDeserializationContext(out.toReadableBuffer());
+	IDBinaryAdapter.builder().withFraming(false).build().read(in);
+    }
+
+    @Test
+    public void testVarInts() throws Exception {
+	System.out.println("TestVarInts");
+	int[] ints = {0, 1, -1, 63, -64, 127, 128, 300, Integer.MAX_VALUE, Integer.MIN_VALUE};
+	long[] longs = {0, 1, -1, 1L << 40, Long.MAX_VALUE, Long.MIN_VALUE};
+
+	BufferSerializationContext out = new BufferSerializationContext();
+	for (int i : ints) {
+	    out.writeVarInt(i);
+	    out.writeSignedVarInt(i);
+	}
+	for (long l : longs) {
+	    out.writeVarLong(l);
+	    out.writeSignedVarLong(l);
+	}
+
+	BufferDeserializationContext in = new BufferDeserializationContext(out.toReadableBuffer());
+	for (int i : ints) {
+	    assertEquals(in.readVarInt(), i);
+	    assertEquals(in.readSignedVarInt(), i);
+	}
+	for (long l : longs) {
+	    assertEquals(in.readVarLong(), l);
+	    assertEquals(in.readSignedVarLong(), l);
+	}
+	assertEquals(in.remaining(), 0);
+    }
+
+    @Test
+    public void testVarIntsFeature() throws Exception {
+	System.out.println("TestVarIntsFeature");
+	List<String> list = Arrays.asList("First", "Second", "Third");
+	Map<String, Integer> map = ImmutableMap.of("A", 1, "B", 2);
+
+	BufferSerializationContext fixed = new BufferSerializationContext();
+	BufferSerializationContext compact = new BufferSerializationContext();
+	compact.setEnabled(BinaryFeature.VARINTS, true);
+	for (BufferSerializationContext out : Arrays.asList(fixed, compact)) {
+	    out.writeHeader();
+	    out.writeString("Some string");
+	    out.writeString(null);
+	    out.writeCollection(list);
+	    out.writeMap(map);
+	    out.writeEnum(BinaryIONGTest.TheEnum.E);
+	}
+	assertTrue(compact.position() < fixed.position());
+
+	for (BufferSerializationContext out : Arrays.asList(fixed, compact)) {
+	    BufferDeserializationContext in = new BufferDeserializationContext(out.toReadableBuffer());
+	    assertTrue(in.readHeaderIfPresent());
+	    assertEquals(in.getFeatures(), out.getFeatures());
+	    assertEquals(in.readString(), "Some string");
+	    assertEquals(in.readString(), null);
+	    assertEquals(in.readList(String.class), list);
+	    assertEquals(in.readMap(String.class, Integer.class), map);
+	    assertEquals(in.readEnum(BinaryIONGTest.TheEnum.class), BinaryIONGTest.TheEnum.E);
+	    assertEquals(in.remaining(), 0);
+	}
+    }
+
+    @Test(dataProvider = "buffers")
+    public void testUnicodeStrings(ByteBuffer buffer) throws Exception {
+	System.out.println("TestUnicodeStrings " + buffer);
+	String[] strings = {"ASCII only", "\u00e9t\u00e9", "\u65e5\u672c\u8a9e", "\uD83D\uDE00 smile", "\u00ff\u0100\u07ff\u0800\uffff"};
+
+	BufferSerializationContext out = new BufferSerializationContext(buffer);
+	for (String str : strings) {
+	    out.writeString(str);
+	    BinaryIO.writeString(out.out(), str);
+	    BinaryIO.writeShortString(out.out(), str);
+	    BinaryIO.writeByteString(out.out(), str);
+	}
+
+	BufferDeserializationContext in = new BufferDeserializationContext(out.toReadableBuffer());
+	for (String str : strings) {
+	    assertEquals(in.readString(), str);
+	    assertEquals(BinaryIO.readString(in.in()), str);
+	    assertEquals(BinaryIO.readShortString(in.in()), str);
+	    assertEquals(BinaryIO.readByteString(in.in()), str);
+	}
+	assertEquals(in.remaining(), 0);
+    }
+
+    @Test
+    public void testStringReferences() throws Exception {
+	System.out.println("TestStringReferences");
+	List<String> list = Arrays.asList("Diamond Sword", "Diamond Sword", null, "", "Bow", "Diamond Sword", "Bow");
+
+	BufferSerializationContext plain = new BufferSerializationContext();
+	BufferSerializationContext refs = new BufferSerializationContext();
+	refs.setEnabled(BinaryFeature.STRING_REFERENCES, true);
+	refs.setEnabled(BinaryFeature.VARINTS, true);
+	for (String str : list) {
+	    plain.writeString(str);
+	    refs.writeString(str);
+	}
+	assertTrue(refs.position() < plain.position());
+
+	BufferDeserializationContext in = new BufferDeserializationContext(refs.toReadableBuffer());
+	in.setEnabled(BinaryFeature.STRING_REFERENCES, true);
+	in.setEnabled(BinaryFeature.VARINTS, true);
+	String[] read = new String[list.size()];
+	for (int i = 0; i < read.length; ++i) {
+	    read[i] = in.readString();
+	}
+	assertEquals(Arrays.asList(read), list);
+	assertTrue(read[0] == read[5]);
+	assertTrue(read[4] == read[6]);
+	assertEquals(in.remaining(), 0);
+    }
+
+    @Test
+    public void testObjectReferences() throws Exception {
+	System.out.println("TestObjectReferences");
+	UUID shared = UUID.randomUUID();
+	Node node = new Node("Cyclic");
+	node.next = node;
+
+	BufferSerializationContext out = new BufferSerializationContext();
+	out.setEnabled(BinaryFeature.OBJECT_REFERENCES, true);
+	out.writeCollection(Arrays.asList(shared, shared, UUID.randomUUID(), shared));
+	out.writeObject(node);
+
+	BufferDeserializationContext in = new BufferDeserializationContext(out.toReadableBuffer());
+	in.setEnabled(BinaryFeature.OBJECT_REFERENCES, true);
+	List<UUID> list = in.readList(UUID.class);
+	assertEquals(list.get(0), shared);
+	assertTrue(list.get(0) == list.get(1));
+	assertTrue(list.get(0) == list.get(3));
+	assertTrue(list.get(0) != list.get(2));
+
+	Node read = in.readObject(Node.class);
+	assertEquals(read.name, "Cyclic");
+	assertTrue(read.next == read);
+	assertEquals(in.remaining(), 0);
+    }
+
+    @Test(expectedExceptions = java.io.EOFException.class)
+    public void testReadPastEnd() throws Exception {
+	System.out.println("TestReadPastEnd");
+	new BufferDeserializationContext(new byte[3]).readInt();
+    }
+
+    @Test
+    public void testCorruptArrayLength() throws Exception {
+	System.out.println("TestCorruptArrayLength");
+	BufferSerializationContext out = new BufferSerializationContext(ByteBuffer.allocate(16));
+	out.writeLength(Integer.MAX_VALUE / 2);
+	out.writeLong(42);
+	byte[] bytes = out.toByteArray();
+
+	try {
+	    new BufferDeserializationContext(bytes).readLongArray();
+	    fail("Expected EOFException");
+	} catch (EOFException ex) {
+	}
+	try {
+	    new DeserializationContext(new DataInputStream(new ByteArrayInputStream(bytes))).readDoubleArray();
+	    fail("Expected EOFException");
+	} catch (EOFException ex) {
+	}
+
+	// Arrays larger than a chunk still grow to their full length
+	long[] longs = new long[100000];
+	for (int i = 0; i < longs.length; ++i) {
+	    longs[i] = i * 0x9E3779B97F4A7C15L;
+	}
+	ByteArrayOutputStream stream = new ByteArrayOutputStream();
+	new SerializationContext(new DataOutputStream(stream)).writeLongArray(longs);
+	DeserializationContext streamIn = new DeserializationContext(new DataInputStream(new ByteArrayInputStream(stream.toByteArray())));
+	assertTrue(Arrays.equals(streamIn.readLongArray(), longs));
+    }
+
+    @Test
+    public void testCorruptSectionLength() throws Exception {
+	System.out.println("TestCorruptSectionLength");
+	ByteArrayOutputStream stream = new ByteArrayOutputStream();
+	DataOutputStream data = new DataOutputStream(stream);
+	data.writeInt(Integer.MAX_VALUE);
+	data.writeLong(42);
+
+	try {
+	    new DeserializationContext(new DataInputStream(new ByteArrayInputStream(stream.toByteArray()))).readLazy(String.class);
+	    fail("Expected EOFException");
+	} catch (EOFException ex) {
+	}
+
+	// Sections larger than a chunk are still read whole
+	String big = new String(new char[100000]).replace('\0', 'x');
+	stream.reset();
+	new SerializationContext(new DataOutputStream(stream)).writeLazy(big);
+	DeserializationContext streamIn = new DeserializationContext(new DataInputStream(new ByteArrayInputStream(stream.toByteArray())));
+	assertEquals(streamIn.readLazy(String.class).get(), big);
+    }
+
+    private static class Node {
+
+	private final String name;
+	private Node next;
+
+	Node(String name) {
+	    this.name = name;
+	}
+    }
+
+    private static class NodeAdapter implements BinaryAdapter<Node> {
+
+	@Override
+	public Node read(DeserializationContext context) throws IOException {
+	    Node node = new Node(context.readString());
+	    context.bindReference(node);
+	    node.next = context.readObject(Node.class);
+	    return node;
+	}
+
+	@Override
+	public void write(Node node, SerializationContext context) throws IOException {
+	    context.writeString(node.name);
+	    context.writeObject(node.next);
+	}
+    }
+}
@@ -0,0 +1,241 @@
+package io.github.totom3.commons.misc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author Totom3
+ */
+public class ConcurrentDataBankNGTest {
+
+    private static final int VALUES = 2000;
+    private static final int THREADS = 4;
+
+    public ConcurrentDataBankNGTest() {
+    }
+
+    /**
+     * Inserts the same values from every thread, in a different order, while
+     * other threads look them up.
+     */
+    @Test
+    public void testConcurrentGetOrInsert() throws Exception {
+	System.out.println("TestConcurrentGetOrInsert");
+	ConcurrentDataBank<String> bank = new ConcurrentDataBank<>();
+	AtomicBoolean running = new AtomicBoolean(true);
+	List<Callable<short[]>> writers = new ArrayList<>();
+	for (int t = 0; t < THREADS; ++t) {
+	    Random random = new Random(t);
+	    writers.add(() -> {
+		List<Integer> order = new ArrayList<>(VALUES);
+		for (int i = 0; i < VALUES; ++i) {
+		    order.add(i);
+		}
+		Collections.shuffle(order, random);
+
+		short[] ids = new short[VALUES];
+		for (int i : order) {
+		    ids[i] = bank.getOrInsert("Value #" + i);
+		}
+		return ids;
+	    });
+	}
+
+	List<short[]> results = run(writers, running, () -> {
+	    for (int i = 0; i < VALUES; i += 7) {
+		String val = "Value #" + i;
+		short id = bank.getByValue(val);
+		if (id != 0) {
+		    assertEquals(bank.get(id), val, "Value of ID " + id);
+		}
+	    }
+	});
+
+	for (short[] ids : results) {
+	    assertEquals(ids, results.get(0));
+	}
+	Set<Short> unique = new HashSet<>();
+	for (short id : results.get(0)) {
+	    assertTrue(unique.add(id), "Duplicate ID " + id);
+	}
+	assertConsistent(bank);
+	assertEquals(bank.size(), VALUES);
+    }
+
+    /**
+     * Removes and inserts values, by value and by ID, while other threads
+     * check that the values which stay in the bank keep their ID.
+     */
+    @Test
+    public void testRemovalsWithReaders() throws Exception {
+	System.out.println("TestRemovalsWithReaders");
+	ConcurrentDataBank<String> bank = new ConcurrentDataBank<>();
+	short[] stableIds = new short[VALUES];
+	for (int i = 0; i < VALUES; ++i) {
+	    stableIds[i] = bank.getOrInsert("Stable #" + i);
+	}
+
+	AtomicBoolean running = new AtomicBoolean(true);
+	List<Callable<Void>> writers = new ArrayList<>();
+	for (int t = 0; t < THREADS; ++t) {
+	    int thread = t;
+	    writers.add(() -> {
+		for (int round = 0; round < 20; ++round) {
+		    short[] ids = new short[VALUES / THREADS];
+		    for (int i = 0; i < ids.length; ++i) {
+			ids[i] = bank.getOrInsert("Churn #" + thread + "-" + i);
+		    }
+		    for (int i = 0; i < ids.length; ++i) {
+			String val = "Churn #" + thread + "-" + i;
+			if ((i & 1) == 0) {
+			    assertTrue(bank.removeValue(val), "Could not remove " + val);
+			} else {
+			    assertEquals(bank.removeKey(ids[i]), val);
+			}
+		    }
+		}
+		return null;
+	    });
+	}
+
+	run(writers, running, () -> {
+	    for (int i = 0; i < VALUES; i += 3) {
+		String val = "Stable #" + i;
+		assertEquals(bank.getByValue(val), stableIds[i], "ID of " + val);
+		assertEquals(bank.get(stableIds[i]), val, "Value of ID " + stableIds[i]);
+	    }
+	});
+
+	assertConsistent(bank);
+	assertEquals(bank.size(), VALUES);
+    }
+
+    /**
+     * Compacts and clears the bank while other threads look values up. Every
+     * lookup which did not overlap a compaction or a clear must be
+     * consistent; the others must still only see values of the bank.
+     */
+    @Test
+    public void testCompactAndClearWithReaders() throws Exception {
+	System.out.println("TestCompactAndClearWithReaders");
+	ConcurrentDataBank<String> bank = new ConcurrentDataBank<>();
+	for (int i = 0; i < VALUES; ++i) {
+	    bank.getOrInsert("Value #" + i);
+	}
+
+	// Odd while the bank is being renumbered or refilled
+	AtomicInteger epoch = new AtomicInteger();
+	AtomicBoolean running = new AtomicBoolean(true);
+	Callable<Void> writer = () -> {
+	    Random random = new Random(0);
+	    for (int round = 0; round < 200; ++round) {
+		for (int i = 0; i < 50; ++i) {
+		    String val = "Value #" + random.nextInt(VALUES);
+		    bank.removeValue(val);
+		    bank.getOrInsert(val);
+		}
+
+		epoch.incrementAndGet();
+		if (round % 10 == 9) {
+		    bank.clear();
+		    for (int i = 0; i < VALUES; ++i) {
+			bank.getOrInsert("Value #" + i);
+		    }
+		} else {
+		    bank.compact();
+		}
+		epoch.incrementAndGet();
+		assertConsistent(bank);
+	    }
+	    return null;
+	};
+
+	run(Collections.singletonList(writer), running, () -> {
+	    for (int i = 0; i < VALUES; i += 5) {
+		String val = "Value #" + i;
+		int before = epoch.get();
+		short id = bank.getByValue(val);
+		String got = (id == 0) ? null : bank.get(id);
+		if (before == epoch.get() && (before & 1) == 0 && id != 0) {
+		    // Null if removed by the writer, which then inserts it back
+		    assertTrue(got == null || got.equals(val), "Value of ID " + id + ": " + got);
+		}
+		assertTrue(got == null || got.startsWith("Value #"), "Unknown value " + got);
+	    }
+	});
+
+	assertConsistent(bank);
+	assertEquals(bank.size(), VALUES);
+    }
+
+    /**
+     * Runs writers to completion while readers loop, and returns what the
+     * writers returned. Fails if a reader failed.
+     */
+    private static <T> List<T> run(List<Callable<T>> writers, AtomicBoolean running, Runnable read) throws Exception {
+	ExecutorService executor = Executors.newFixedThreadPool(writers.size() + THREADS);
+	CountDownLatch start = new CountDownLatch(1);
+	try {
+	    List<Future<?>> readers = new ArrayList<>();
+	    for (int t = 0; t < THREADS; ++t) {
+		readers.add(executor.submit(() -> {
+		    start.await();
+		    while (running.get()) {
+			read.run();
+		    }
+		    return null;
+		}));
+	    }
+
+	    List<Future<T>> futures = new ArrayList<>();
+	    for (Callable<T> writer : writers) {
+		futures.add(executor.submit(() -> {
+		    start.await();
+		    return writer.call();
+		}));
+	    }
+
+	    start.countDown();
+	    List<T> results = new ArrayList<>();
+	    try {
+		for (Future<T> future : futures) {
+		    results.add(future.get(60, TimeUnit.SECONDS));
+		}
+	    } finally {
+		running.set(false);
+	    }
+	    for (Future<?> reader : readers) {
+		reader.get(60, TimeUnit.SECONDS);
+	    }
+	    return results;
+	} finally {
+	    executor.shutdownNow();
+	}
+    }
+
+    private static void assertConsistent(ConcurrentDataBank<String> bank) {
+	short[] ids = bank.ids();
+	assertEquals(ids.length, bank.size());
+	for (short id : ids) {
+	    String val = bank.get(id);
+	    assertEquals(bank.getByValue(val), id, "ID of " + val);
+	}
+	assertEquals(bank.inversedAll().size(), ids.length);
+    }
+}
@@ -0,0 +1,131 @@
+package io.github.totom3.commons.misc;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author Totom3
+ */
+public class DataBankNGTest {
+
+    public DataBankNGTest() {
+    }
+
+    @Test
+    public void testInsertAndRemove() {
+	System.out.println("TestInsertAndRemove");
+	DataBank<String> bank = new DataBank<>();
+	Map<Short, String> expected = new HashMap<>();
+	for (int i = 0; i < 1000; ++i) {
+	    String val = "Value #" + i;
+	    short id = bank.getOrInsert(val);
+	    assertEquals(bank.getOrInsert(val), id);
+	    expected.put(id, val);
+	}
+
+	// Remove every third value, so that probe sequences get shifted back
+	for (int i = 0; i < 1000; i += 3) {
+	    assertTrue(bank.removeValue("Value #" + i));
+	    expected.values().remove("Value #" + i);
+	}
+	assertEquals(bank.size(), expected.size());
+	assertEquals(bank.all(), expected);
+
+	for (Map.Entry<Short, String> entry : expected.entrySet()) {
+	    assertEquals(bank.get(entry.getKey()), entry.getValue());
+	    assertEquals(bank.getByValue(entry.getValue()), (short) entry.getKey());
+	    assertEquals(bank.inversedAll().get(entry.getValue()), entry.getKey());
+	}
+	assertEquals(bank.getByValue("Value #0"), 0);
+	assertFalse(bank.containsValue("Value #0"));
+
+	short id = bank.getByValue("Value #1");
+	assertEquals(bank.removeKey(id), "Value #1");
+	assertNull(bank.get(id));
+	assertFalse(bank.containsValue("Value #1"));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInsertDuplicate() {
+	System.out.println("TestInsertDuplicate");
+	DataBank<String> bank = new DataBank<>();
+	bank.insert((short) 5, "A");
+	assertEquals(bank.getOrInsert("B"), 1);
+	bank.insert((short) 7, "B");
+    }
+
+    @Test
+    public void testIdRecycling() {
+	System.out.println("TestIdRecycling");
+	DataBank<Integer> bank = new DataBank<>();
+	for (int i = 0; i < 200000; ++i) {
+	    short id = bank.getOrInsert(i);
+	    assertTrue(id > 0 && id <= 10, "Unexpected ID " + id);
+	    if (i >= 9) {
+		assertTrue(bank.removeValue(i - 9));
+	    }
+	}
+	assertEquals(bank.size(), 9);
+    }
+
+    @Test
+    public void testCompact() {
+	System.out.println("TestCompact");
+	DataBank<String> bank = new DataBank<>();
+	for (int i = 0; i < 100; ++i) {
+	    bank.getOrInsert("Value #" + i);
+	}
+	for (int i = 0; i < 100; ++i) {
+	    if (i % 10 != 0) {
+		bank.removeValue("Value #" + i);
+	    }
+	}
+
+	short[] remap = bank.compact();
+	assertEquals(bank.size(), 10);
+	for (int i = 0; i < 10; ++i) {
+	    short oldId = (short) (i * 10 + 1);
+	    assertEquals(remap[oldId], i + 1);
+	    assertEquals(bank.get((short) (i + 1)), "Value #" + (i * 10));
+	}
+	assertEquals(remap[2], 0);
+	assertEquals(bank.getOrInsert("New"), 11);
+    }
+
+    @Test
+    public void testLoad() {
+	System.out.println("TestLoad");
+	for (AbstractDataBank<String> bank : Arrays.<AbstractDataBank<String>>asList(new DataBank<>(), new ConcurrentDataBank<>())) {
+	    bank.getOrInsert("Old");
+	    bank.load(new short[]{4, 2, -5}, Arrays.asList("Four", "Two", "Minus five"));
+	    assertEquals(bank.size(), 3);
+	    assertFalse(bank.containsValue("Old"));
+	    assertEquals(bank.get((short) -5), "Minus five");
+	    assertEquals(bank.getByValue("Two"), 2);
+	    assertEquals(bank.ids(), new short[]{2, 4, -5});
+
+	    bank.load(null, Arrays.asList("One", "Two"));
+	    assertEquals(bank.ids(), new short[]{1, 2});
+	    assertEquals(bank.getOrInsert("Three"), 3);
+
+	    try {
+		bank.load(null, Arrays.asList("Same", "Same"));
+		fail("Duplicate values should be rejected");
+	    } catch (IllegalArgumentException expected) {
+	    }
+
+	    // Left unchanged by the failed load
+	    assertEquals(bank.ids(), new short[]{1, 2, 3});
+	    assertEquals(bank.getByValue("Three"), 3);
+	    assertFalse(bank.containsValue("Same"));
+	}
+    }
+}
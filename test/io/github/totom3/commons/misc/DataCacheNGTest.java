@@ -0,0 +1,179 @@
+package io.github.totom3.commons.misc;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author Totom3
+ */
+public class DataCacheNGTest {
+
+    public DataCacheNGTest() {
+    }
+
+    @Test
+    public void testSingleFlightLoad() throws Exception {
+	System.out.println("TestSingleFlightLoad");
+	TestCache cache = new TestCache();
+	cache.blocked = new CountDownLatch(1);
+
+	CompletableFuture<String> first = cache.getOrLoadAsync("a");
+	CompletableFuture<String> second = cache.getOrLoadAsync("a");
+	assertTrue(first == second);
+
+	cache.blocked.countDown();
+	assertEquals(first.get(5, TimeUnit.SECONDS), "a1");
+	assertEquals(cache.loads.get(), 1);
+	assertTrue(cache.isLoaded("a"));
+	assertTrue(cache.getOrLoadAsync("a").isDone());
+	cache.shutdownLoads();
+    }
+
+    @Test
+    public void testFailedLoad() throws Exception {
+	System.out.println("TestFailedLoad");
+	TestCache cache = new TestCache();
+	try {
+	    cache.getOrLoadAsync("fail").get(5, TimeUnit.SECONDS);
+	    fail("Load should have failed");
+	} catch (ExecutionException ex) {
+	    assertTrue(ex.getCause() instanceof IOException);
+	}
+	assertTrue(!cache.isLoaded("fail"));
+	cache.shutdownLoads();
+    }
+
+    @Test
+    public void testRefresh() throws Exception {
+	System.out.println("TestRefresh");
+	TestCache cache = new TestCache();
+	cache.getOrLoad("a");
+	assertEquals(cache.refreshAsync("a").get(5, TimeUnit.SECONDS), "a2");
+
+	// Dirty values are not refreshed
+	cache.set("a", "changed");
+	assertEquals(cache.refreshAsync("a").get(5, TimeUnit.SECONDS), "changed");
+	assertEquals(cache.loads.get(), 2);
+	cache.shutdownLoads();
+    }
+
+    @Test
+    public void testRefreshAfterShutdown() throws Exception {
+	System.out.println("TestRefreshAfterShutdown");
+	TestCache cache = new TestCache();
+	cache.getOrLoad("a");
+	cache.refreshAsync("a").get(5, TimeUnit.SECONDS);
+	cache.shutdownLoads();
+
+	CompletableFuture<String> future = cache.refreshAsync("a");
+	assertTrue(future.isCompletedExceptionally());
+	try {
+	    future.join();
+	    fail("Refresh should have been rejected");
+	} catch (CompletionException ex) {
+	    assertTrue(ex.getCause() instanceof RejectedExecutionException);
+	}
+    }
+
+    @Test
+    public void testMBean() throws Exception {
+	System.out.println("TestMBean");
+	TestCache cache = new TestCache();
+	cache.getOrLoad("a");
+	cache.set("b", "changed");
+
+	ObjectName name = cache.registerMBean("Plain");
+	MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+	try {
+	    assertEquals(server.getAttribute(name, "Size"), 2L);
+	    assertEquals(server.getAttribute(name, "DirtyCount"), 1);
+	    for (MBeanAttributeInfo attribute : server.getMBeanInfo(name).getAttributes()) {
+		assertFalse(attribute.getName().contains("Save"), attribute.getName());
+	    }
+	} finally {
+	    server.unregisterMBean(name);
+	}
+    }
+
+    @Test
+    public void testDirtyAfterEviction() throws Exception {
+	System.out.println("TestDirtyAfterEviction");
+	TestCache cache = new TestCache();
+	cache.set("a", "changed");
+	cache.cache.invalidate("a");
+	assertTrue(cache.isDirty("a"));
+
+	// Loaded back from storage: no longer the value which was changed
+	assertEquals(cache.getOrLoad("a"), "a1");
+	assertFalse(cache.isDirty("a"));
+	assertEquals(cache.dirtyCount(), 0);
+    }
+
+    @Test
+    public void testSetWhileLoading() throws Exception {
+	System.out.println("TestSetWhileLoading");
+	TestCache cache = new TestCache();
+	cache.blocked = new CountDownLatch(1);
+	CompletableFuture<String> load = cache.getOrLoadAsync("a");
+	assertTrue(cache.loading.await(5, TimeUnit.SECONDS));
+
+	// Newer than the value being loaded
+	cache.set("a", "fresh");
+	cache.blocked.countDown();
+	assertEquals(load.get(5, TimeUnit.SECONDS), "fresh");
+	assertEquals(cache.getLoaded("a"), "fresh");
+	assertTrue(cache.isDirty("a"));
+	assertEquals(cache.loadedValues, 0);
+	cache.shutdownLoads();
+    }
+
+    private static class TestCache extends DataCache<String, String> {
+
+	private final AtomicInteger loads = new AtomicInteger();
+	private volatile CountDownLatch blocked;
+	private final CountDownLatch loading = new CountDownLatch(1);
+	private volatile int loadedValues;
+
+	@Override
+	protected LoadingCache<String, String> makeCache() {
+	    return CacheBuilder.newBuilder().build(new CacheLoader<String, String>() {
+
+		@Override
+		public String load(String key) throws Exception {
+		    loading.countDown();
+		    if (blocked != null) {
+			blocked.await();
+		    }
+		    if (key.equals("fail")) {
+			throw new IOException("Failed to load " + key);
+		    }
+		    return key + loads.incrementAndGet();
+		}
+	    });
+	}
+
+	@Override
+	protected void onLoad(String key, String element) {
+	    ++loadedValues;
+	}
+    }
+}
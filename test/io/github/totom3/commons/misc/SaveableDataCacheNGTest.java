@@ -0,0 +1,268 @@
+package io.github.totom3.commons.misc;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author Totom3
+ */
+public class SaveableDataCacheNGTest {
+
+    public SaveableDataCacheNGTest() {
+    }
+
+    @Test
+    public void testIncrementalSaves() throws Exception {
+	System.out.println("TestIncrementalSaves");
+	TestCache cache = new TestCache();
+	cache.getOrLoad("a");
+	cache.set("b", "b2");
+	assertFalse(cache.isDirty("a"));
+	assertTrue(cache.isDirty("b"));
+	assertFalse(cache.markDirty("c"));
+
+	cache.saveAll();
+	assertEquals(cache.saved, Arrays.asList("b2"));
+	assertEquals(cache.getSavedCount(), 1);
+	assertEquals(cache.getSkippedCount(), 1);
+	assertEquals(cache.dirtyCount(), 0);
+
+	assertTrue(cache.markDirty("a"));
+	cache.set("b", "fail");
+	cache.saveAll();
+	assertEquals(cache.saved, Arrays.asList("b2", "a"));
+	assertFalse(cache.isDirty("a"));
+	assertTrue(cache.isDirty("b"));
+
+	cache.saveAll(true);
+	assertEquals(cache.saved, Arrays.asList("b2", "a", "a"));
+	assertEquals(cache.getSavedCount(), 3);
+	assertTrue(cache.shutdown(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testStats() throws Exception {
+	System.out.println("TestStats");
+	TestCache cache = new TestCache();
+	cache.set("a", "a1");
+	cache.set("b", "fail");
+	cache.getOrLoad("c");
+	cache.saveAll();
+
+	SaveableDataCacheStats stats = cache.getStats();
+	assertEquals(stats.getSize(), 3);
+	assertEquals(stats.getSavedCount(), 1);
+	assertEquals(stats.getFailedSaveCount(), 1);
+	assertEquals(stats.getSkippedCount(), 1);
+	assertEquals(stats.getDirtyCount(), 1);
+	long total = 0;
+	for (long count : stats.getSaveLatencyHistogram()) {
+	    total += count;
+	}
+	assertEquals(total, 2);
+	assertTrue(stats.getSaveLatencyPercentile(100) > 0);
+
+	ObjectName name = cache.registerMBean("Test");
+	try {
+	    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+	    assertEquals(server.getAttribute(name, "SavedCount"), 1L);
+	    assertEquals(server.getAttribute(name, "Size"), 3L);
+	} finally {
+	    ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+	}
+    }
+
+    @Test
+    public void testCoalescedSaves() throws Exception {
+	System.out.println("TestCoalescedSaves");
+	TestCache cache = new TestCache();
+	cache.blocked = new CountDownLatch(1);
+
+	CompletableFuture<Void> first = cache.saveAsync("a", "1");
+	cache.started.await(5, TimeUnit.SECONDS);
+
+	// The save thread is busy; these are coalesced
+	CompletableFuture<Void> second = cache.saveAsync("b", "x");
+	CompletableFuture<Void> third = cache.saveAsync("b", "y");
+	assertTrue(second == third);
+	assertEquals(cache.pendingSaves(), 1);
+
+	cache.blocked.countDown();
+	assertTrue(cache.flush(5, TimeUnit.SECONDS));
+	assertTrue(first.isDone());
+	assertTrue(third.isDone());
+	assertEquals(cache.saved, Arrays.asList("1", "y"));
+	assertTrue(cache.shutdown(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testFailedSave() throws Exception {
+	System.out.println("TestFailedSave");
+	TestCache cache = new TestCache();
+	try {
+	    cache.saveAsync("a", "fail").get(5, TimeUnit.SECONDS);
+	    fail("Save should have failed");
+	} catch (ExecutionException ex) {
+	    assertTrue(ex.getCause() instanceof IOException);
+	}
+
+	cache.saveAsync("a", "ok").get(5, TimeUnit.SECONDS);
+	assertEquals(cache.saved, Arrays.asList("ok"));
+	assertTrue(cache.shutdown(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testFailedSaveOfUnloadedKey() throws Exception {
+	System.out.println("TestFailedSaveOfUnloadedKey");
+	TestCache cache = new TestCache();
+	cache.broken = true;
+	CompletableFuture<Void> failed = cache.saveAsync("a", "a1");
+	assertTrue(cache.flush(5, TimeUnit.SECONDS));
+	assertTrue(failed.isCompletedExceptionally());
+	assertFalse(cache.isLoaded("a"));
+
+	// Kept aside and retried by the next saveAll
+	cache.broken = false;
+	cache.saveAll();
+	assertEquals(cache.saved, Arrays.asList("a1"));
+
+	// ...or by the next batch of asynchronous saves
+	cache.broken = true;
+	cache.saveAsync("b", "b1");
+	assertTrue(cache.flush(5, TimeUnit.SECONDS));
+	cache.broken = false;
+	cache.saveAllAsync();
+	assertTrue(cache.shutdown(5, TimeUnit.SECONDS));
+	assertEquals(cache.saved, Arrays.asList("a1", "b1"));
+    }
+
+    @Test
+    public void testSaveAfterShutdown() throws Exception {
+	System.out.println("TestSaveAfterShutdown");
+	TestCache cache = new TestCache();
+	assertTrue(cache.shutdown(5, TimeUnit.SECONDS));
+
+	CompletableFuture<Void> future = cache.saveAsync("a", "1");
+	assertTrue(future.isCompletedExceptionally());
+	try {
+	    future.join();
+	    fail("Save should have been rejected");
+	} catch (RuntimeException ex) {
+	    assertTrue(ex.getCause() instanceof RejectedExecutionException);
+	}
+	assertEquals(cache.pendingSaves(), 0);
+    }
+
+    @Test
+    public void testSaveAfterShutdownKeepsValues() throws Exception {
+	System.out.println("TestSaveAfterShutdownKeepsValues");
+	TestCache cache = new TestCache();
+	cache.broken = true;
+	cache.saveAsync("b", "b1");
+	assertTrue(cache.flush(5, TimeUnit.SECONDS));
+	cache.broken = false;
+
+	cache.set("a", "a1");
+	assertTrue(cache.shutdown(5, TimeUnit.SECONDS));
+	assertTrue(cache.saveAsync("a").isCompletedExceptionally());
+	assertTrue(cache.saveAllAsync().isCompletedExceptionally());
+	assertTrue(cache.isDirty("a"));
+
+	cache.saveAll();
+	assertEquals(cache.saved, Arrays.asList("b1", "a1"));
+    }
+
+    @Test
+    public void testSaveAllAfterRunningSave() throws Exception {
+	System.out.println("TestSaveAllAfterRunningSave");
+	TestCache cache = new TestCache();
+	cache.set("a", "old");
+	cache.blocked = new CountDownLatch(1);
+	CompletableFuture<Void> running = cache.saveAsync("a");
+	assertTrue(cache.started.await(5, TimeUnit.SECONDS));
+
+	// Waits for the running save instead of being overwritten by it
+	cache.set("a", "new");
+	Thread saver = new Thread(cache::saveAll);
+	saver.start();
+	long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+	while (saver.getState() != Thread.State.BLOCKED && System.nanoTime() < deadline) {
+	    Thread.sleep(1);
+	}
+	assertEquals(saver.getState(), Thread.State.BLOCKED);
+
+	cache.blocked.countDown();
+	saver.join(5000);
+	running.get(5, TimeUnit.SECONDS);
+	assertEquals(cache.saved, Arrays.asList("old", "new"));
+	assertFalse(cache.isDirty("a"));
+
+	// A queued save is taken over, or saved before
+	cache.blocked = new CountDownLatch(1);
+	cache.saveAsync("b", "b1");
+	CompletableFuture<Void> queued = cache.saveAsync("a", "stale");
+	cache.set("a", "newer");
+	cache.blocked.countDown();
+	cache.saveAll();
+	assertTrue(cache.flush(5, TimeUnit.SECONDS));
+	assertTrue(queued.isDone());
+	assertFalse(cache.isDirty("a"));
+	assertTrue(cache.saved.lastIndexOf("newer") > cache.saved.lastIndexOf("stale"));
+	assertTrue(cache.shutdown(5, TimeUnit.SECONDS));
+    }
+
+    private static class TestCache extends SaveableDataCache<String, String> {
+
+	private final List<String> saved = new CopyOnWriteArrayList<>();
+	private final CountDownLatch started = new CountDownLatch(1);
+	private volatile CountDownLatch blocked;
+	private volatile boolean broken;
+
+	@Override
+	protected LoadingCache<String, String> makeCache() {
+	    return CacheBuilder.newBuilder().build(new CacheLoader<String, String>() {
+
+		@Override
+		public String load(String key) {
+		    return key;
+		}
+	    });
+	}
+
+	@Override
+	public void save(String element) throws IOException {
+	    started.countDown();
+	    if (blocked != null) {
+		try {
+		    blocked.await();
+		} catch (InterruptedException ex) {
+		    throw new IOException(ex);
+		}
+	    }
+
+	    if (broken || element.equals("fail")) {
+		throw new IOException("Failed to save " + element);
+	    }
+	    saved.add(element);
+	}
+    }
+}